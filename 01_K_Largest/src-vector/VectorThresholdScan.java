@@ -0,0 +1,25 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ThresholdScan which compares a whole vector of elements with the threshold at a time (the widest vector the
+ * CPU has), and only looks closer at a block when at least one of its elements is above.
+ * Loaded by ThresholdScan when jdk.incubator.vector is available.
+ */
+class VectorThresholdScan extends ThresholdScan {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+
+    @Override
+    int nextAbove(int[] a, int from, int to, int threshold) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Integer> above = IntVector.fromArray(SPECIES, a, i).compare(VectorOperators.GT, threshold);
+            if (above.anyTrue()) return i + above.firstTrue();
+        }
+        return super.nextAbove(a, i, to, threshold);     // the last elements, fewer than a vector
+    }
+}
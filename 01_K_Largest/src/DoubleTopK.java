@@ -0,0 +1,192 @@
+import java.util.stream.DoubleStream;
+
+/**
+ * Keeps the K largest doubles it has been offered, in a min-heap of primitive doubles (no boxing).
+ * The smallest of the K kept values sits on top of the heap, so a new value only has to be
+ * compared with the top, and it costs O(log K) to replace it. Finding the K largest of n values
+ * is therefore O(n log K) instead of O(n * K) with insertion.
+ *
+ * Next to each value the heap keeps the index it was offered with (its position in the array,
+ * or -1 when it has none), so the caller can tell where the winners came from.
+ *
+ * NaN values are not ordered, and are therefore skipped.
+ *
+ * The heap is not thread safe: give each thread its own heap and merge them at the end.
+ */
+public class DoubleTopK {
+    private final int k;
+    private final double[] values;
+    private final int[] indices;
+    private int size;
+
+
+    /**
+     * @param k number of largest values to keep, k >= 1
+     */
+    public DoubleTopK(int k) {
+        if (k < 1) throw new IllegalArgumentException("k must be at least 1, was " + k);
+        this.k = k;
+        values = new double[k];
+        indices = new int[k];
+    }
+
+
+    /**
+     * Collects the K largest values of a stream. Works for both sequential and parallel streams,
+     * in which case every thread fills its own heap and the heaps are merged.
+     * @param stream the values
+     * @param k number of largest values to keep
+     * @return a heap holding the K largest values of the stream
+     */
+    public static DoubleTopK of(DoubleStream stream, int k) {
+        return stream.collect(() -> new DoubleTopK(k), DoubleTopK::offer, DoubleTopK::merge);
+    }
+
+
+    public int capacity() { return k; }
+
+    public int size() { return size; }
+
+    public boolean isFull() { return size == k; }
+
+    /**
+     * @return the smallest value kept. A new value has to be larger than this to get in, once the heap is full.
+     */
+    public double threshold() { return values[0]; }
+
+
+    public void offer(double value) {
+        offer(value, -1);
+    }
+
+
+    /**
+     * Offers a value, which is kept if it is among the K largest seen so far.
+     * @param value the value
+     * @param index where the value came from
+     */
+    public void offer(double value, int index) {
+        if (Double.isNaN(value)) return;
+        if (size < k) {
+            values[size] = value;
+            indices[size] = index;
+            siftUp(size++);
+        }
+        else if (value > values[0]) {
+            values[0] = value;
+            indices[0] = index;
+            siftDown(0, size);
+        }
+    }
+
+
+    /**
+     * Offers a[from] ... a[to - 1], with their positions as indices. Can be called again and again with
+     * new chunks of data; the heap keeps the K largest of everything it has seen.
+     * @param a the array
+     * @param from first position (inclusive)
+     * @param to last position (exclusive)
+     */
+    public void offerAll(double[] a, int from, int to) {
+        int i = from;
+        for (; i < to && size < k; i++) offer(a[i], i);
+
+        double min = values[0];
+        for (; i < to; i++) {
+            if (a[i] > min) {               // almost every value fails this test once the heap has warmed up
+                values[0] = a[i];
+                indices[0] = i;
+                siftDown(0, size);
+                min = values[0];
+            }
+        }
+    }
+
+
+    /**
+     * Offers all values of a sequential stream. Use DoubleTopK.of(..) for parallel streams.
+     * @param stream the values
+     */
+    public void offerAll(DoubleStream stream) {
+        stream.sequential().forEach(this::offer);
+    }
+
+
+    /**
+     * Adds the values kept by another heap to this heap, which then holds the K largest of both.
+     * @param other the other heap, left unchanged
+     */
+    public void merge(DoubleTopK other) {
+        for (int i = 0; i < other.size; i++) offer(other.values[i], other.indices[i]);
+    }
+
+
+    /**
+     * @return the kept values, largest first. The heap is left unchanged.
+     */
+    public double[] toSortedArray() {
+        DoubleTopK copy = new DoubleTopK(k);
+        copy.merge(this);
+        double[] sorted = new double[size];
+        copy.drainSorted(sorted, null);
+        return sorted;
+    }
+
+
+    /**
+     * Sorts the kept values, largest first, into the given arrays and empties the heap.
+     * Nothing is allocated, which makes this the method to use in tight loops.
+     * @param outValues receives the values, must have room for size() values
+     * @param outIndices receives the indices of the values, or null if they are not needed
+     * @return number of values written
+     */
+    public int drainSorted(double[] outValues, int[] outIndices) {
+        int n = size;
+        // Heap sort: moving the smallest value to the end, over and over, leaves the array sorted in descending order
+        for (int last = n - 1; last > 0; last--) {
+            swap(0, last);
+            siftDown(0, last);
+        }
+        System.arraycopy(values, 0, outValues, 0, n);
+        if (outIndices != null) System.arraycopy(indices, 0, outIndices, 0, n);
+        size = 0;
+        return n;
+    }
+
+
+    public void clear() {
+        size = 0;
+    }
+
+
+    private void siftUp(int i) {
+        int parent;
+        while (i > 0) {
+            parent = (i - 1) >>> 1;
+            if (values[parent] <= values[i]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+
+    private void siftDown(int i, int n) {
+        int child;
+        while ((child = 2 * i + 1) < n) {
+            if (child + 1 < n && values[child + 1] < values[child]) child++;
+            if (values[i] <= values[child]) return;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+
+    private void swap(int i, int j) {
+        double temp = values[i];
+        values[i] = values[j];
+        values[j] = temp;
+        int index = indices[i];
+        indices[i] = indices[j];
+        indices[j] = index;
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Benchmarks of finding the K largest, for every mode, n, K and number of threads. The sort of a copy of the
+ * array is the sequential baseline the speedups are measured against.
+ *
+ * Run with: java -cp <classes> KLargestBenchmark [options], see Bench for the options. Bench is shared by the projects and
+ * compiled together with each of them. Example:
+ *      javac -d out ../bench/src/*.java src/*.java
+ *      java -cp out KLargestBenchmark -f 1 -p n=10000000 -p threads=1,4,8 kLargest
+ */
+public class KLargestBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String cores = "" + Runtime.getRuntime().availableProcessors();
+
+        Bench.run(KLargestBenchmark.class, args, WorkerPool::setParallelism,
+                Bench.benchmark("kLargest", KLargestBenchmark::kLargest)
+                        .param("n", "1000000", "10000000")
+                        .param("K", "20", "100", "1000", "100000")
+                        .param("threads", "1", cores)
+                        .param("mode", "INSERTION", "HEAP", "SELECT"),
+
+                Bench.benchmark("findLargest", KLargestBenchmark::findLargest)
+                        .param("n", "1000000", "10000000")
+                        .param("K", "20", "100", "1000", "100000")
+                        .param("threads", "1", cores),
+
+                Bench.benchmark("sortBaseline", KLargestBenchmark::sortBaseline)
+                        .param("n", "1000000", "10000000"));
+    }
+
+
+    /**
+     * K_Largest.init(), which moves the K largest to the front of the array in place, so each invocation works on a fresh copy.
+     */
+    private static Bench.Invocation kLargest(Map<String, String> params) {
+        int[] original = new Main().randomArray(Integer.parseInt(params.get("n")), 100);
+        int[] array = new int[original.length];
+        int K = Integer.parseInt(params.get("K"));
+        K_Largest.Mode mode = K_Largest.Mode.valueOf(params.get("mode"));
+
+        return new Bench.Invocation() {
+            @Override
+            public void setup() {
+                System.arraycopy(original, 0, array, 0, array.length);
+            }
+
+            @Override
+            public Object run() {
+                new K_Largest(array, K, mode).init();
+                return array;
+            }
+        };
+    }
+
+
+    private static Bench.Invocation findLargest(Map<String, String> params) {
+        int[] array = new Main().randomArray(Integer.parseInt(params.get("n")), 100);
+        int K = Integer.parseInt(params.get("K"));
+        int[] largest = new int[K];
+        return () -> K_Largest.findLargest(array, K, largest);
+    }
+
+
+    private static Bench.Invocation sortBaseline(Map<String, String> params) {
+        int[] original = new Main().randomArray(Integer.parseInt(params.get("n")), 100);
+        int[] array = new int[original.length];
+
+        return new Bench.Invocation() {
+            @Override
+            public void setup() {
+                System.arraycopy(original, 0, array, 0, array.length);
+            }
+
+            @Override
+            public Object run() {
+                Arrays.sort(array);
+                return array;
+            }
+        };
+    }
+}
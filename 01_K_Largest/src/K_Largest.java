@@ -1,76 +1,89 @@
 
-import java.util.concurrent.CyclicBarrier;
-
 public class K_Largest {
+    /**
+     * How the K largest are found.
+     * INSERTION keeps each thread's K largest sorted by insertion, O(n * K), which is the fastest for small K.
+     * HEAP keeps each thread's K largest in a min-heap, O(n log K), and merges the heaps at the end.
+     * SELECT partitions the array around sampled pivots (quickselect), O(n + K log K), for K from about 1 % of n.
+     */
+    enum Mode { INSERTION, HEAP, SELECT }
+
+    private static final int HEAP_MIN_K = 128;      // from this K and up the heap beats insertion
+    private static final int SELECT_MIN_K = 1024;   // below this K, selection does not pay off even when K is a large part of n
+    private static final int SELECT_FRACTION = 100; // from K = n / SELECT_FRACTION and up selection beats the heap
+
     private final int K;
     private final int numOfThreads;
     private final int[] array;
     private final int numOfElements;
-    private final CyclicBarrier cyclicBarrier;
-    private int tk;
+    private final Mode mode;
 
 
     public K_Largest(int[] array, int K){
+        this(array, K, chooseMode(array.length, K));
+    }
+
+
+    public K_Largest(int[] array, int K, Mode mode){
         this.array = array;
         this.K = K;
-        int cores = Runtime.getRuntime().availableProcessors();
-        int parArrLen = (array.length - K * 2) - ((array.length - K * 2) % cores); // 912
-
-        numOfElements = parArrLen / cores; // 76
-        tk = K;
-        if (parArrLen < 1) numOfThreads = 0;
-        else if (numOfElements < 2) {           // there are < 2 elements for each core
-            tk = numOfElements;
-            numOfThreads = 1;
-        }
-        else if (numOfElements < K) { // numOfElement is how many elements each thread handles
-            tk = numOfElements;
-            numOfThreads = cores;
-        }
-        else numOfThreads = cores;
+        this.mode = mode;
+        int cores = WorkerPool.getParallelism();
+        int rest = Math.max(array.length - K, 0);   // elements after the first K, which the workers share
 
-        cyclicBarrier = new CyclicBarrier( numOfThreads + 1);
+        numOfThreads = Math.max(1, Math.min(cores, rest / 2));
+        numOfElements = rest / numOfThreads;
+    }
+
+
+    /**
+     * @param n number of elements
+     * @param K number of largest elements to find
+     * @return the mode which is expected to be the fastest for n and K
+     */
+    static Mode chooseMode(int n, int K) {
+        if (K < HEAP_MIN_K) return Mode.INSERTION;
+        if (K >= SELECT_MIN_K && (long) K * SELECT_FRACTION >= n) return Mode.SELECT;
+        return Mode.HEAP;
     }
 
     class Worker implements Runnable{
-        int start, end;
+        int start, end, tk;      // tk is how many of its largest elements the worker keeps sorted at start
         Worker(int start,int end){
             this.start = start;
             this.end = end;
+            tk = Math.min(K, end - start);
         }
 
         @Override
         public void run() {
             sort();
-            try { cyclicBarrier.await(); }
-            catch (Exception e){e.printStackTrace();}
         }
 
         void sort(){
             int k, j, temp;
-            for (int i = start; i < start + tk; i++){            // Sort first K
-                if (array[i+1] > array[i]){
-                    j = i;
-                    while (j > start && array[j+1] > array[j]) {
-                        temp = array[j];
-                        array[j] = array[j + 1];
-                        array[j + 1] = temp;
-                        j--;
-                    }
+            for (int i = start + 1; i < start + tk; i++){        // Sort first tk
+                temp = array[i];
+                j = i;
+                while (j > start && array[j - 1] < temp) {
+                    array[j] = array[j - 1];
+                    j--;
                 }
+                array[j] = temp;
             }
+            if (tk == 0) return;
             k = start + tk;
-            for (int i = k; i < end; i++){                      // Find larger than K - 1 and replace
-                if (array[i] > array[k - 1]) {
-                    temp = array[i];
-                    array[i] = array[k - 1];
-                    j = k - 1;
-                    while (j > start && array[j - 1] < temp) {
-                        array[j] = array[j - 1];
-                        j--;
-                    }
-                    array[j] = temp;
+            ThresholdScan scan = ThresholdScan.INSTANCE;
+            for (int i = scan.nextAbove(array, k, end, array[k - 1]); i < end;
+                 i = scan.nextAbove(array, i + 1, end, array[k - 1])){   // Find larger than k - 1 and replace
+                temp = array[i];
+                array[i] = array[k - 1];
+                j = k - 1;
+                while (j > start && array[j - 1] < temp) {
+                    array[j] = array[j - 1];
+                    j--;
                 }
+                array[j] = temp;
             }
 
         }
@@ -78,38 +91,53 @@ public class K_Largest {
 
 
     void init(){
-        if (array.length < K) return;         // if array length is <= K then array is already sorted. return
+        if (array.length < K || K < 1) return;         // if array length is <= K then array is already sorted. return
+        if (mode == Mode.HEAP) {
+            initHeap();
+            return;
+        }
+        if (mode == Mode.SELECT) {
+            new ParallelSelect(array).selectLargest(K);
+            return;
+        }
         int start, end;
+        Worker[] workers = new Worker[numOfThreads];
 
-        for (int i = 0; i < numOfThreads-1; i++){
+        for (int i = 0; i < numOfThreads - 1; i++){
             start = K + (i * numOfElements);
             end = K + ((i+1) * numOfElements);
-            new Thread(new Worker(start, end)).start();
+            workers[i] = new Worker(start, end);
         }
-        start = K + (numOfThreads-1) * numOfElements;
+        start = K + (numOfThreads - 1) * numOfElements;
         end = array.length;
-        new Thread(new Worker(start, end)).start();     // Sort last part
+        workers[numOfThreads - 1] = new Worker(start, end);     // Sort last part
 
+        WorkerPool.Phase phase = WorkerPool.submit(workers);
         sortFirstKs(); // While other threads are sorting, main sorts first K
+        phase.await();
 
-        try { cyclicBarrier.await(); }
-        catch (Exception e){ e.printStackTrace(); }
-
-        for (int i = 0; i < numOfThreads; i++){
-            start = K + (i * numOfElements);
-            reorganize(start);
+        for (Worker worker : workers){
+            reorganize(worker.start, worker.start + worker.tk);
         }
     }
 
-    private void reorganize(int start) {
-        int temp;
-        for (int i = start; i < start + tk; i++){
-            if (array[i] > array[K-1]){
-                temp = array[K-1];
-                array[K-1] = array[i];
-                array[i] = temp;
-                sortFirstKs();
+    /**
+     * Moves the elements a worker kept in [start, end), sorted from largest to smallest, into the first K
+     * if they are larger than the smallest of the first K. Each one is inserted at its place, the same way
+     * a Worker does it, instead of sorting the first K all over again.
+     */
+    private void reorganize(int start, int end) {
+        int j, temp;
+        for (int i = start; i < end; i++){
+            if (array[i] <= array[K-1]) return;   // the rest of the worker's elements are smaller still
+            temp = array[i];
+            array[i] = array[K-1];
+            j = K - 1;
+            while (j > 0 && array[j - 1] < temp) {
+                array[j] = array[j - 1];
+                j--;
             }
+            array[j] = temp;
         }
     }
     void sortFirstKs() {
@@ -126,4 +154,93 @@ public class K_Largest {
             }
         }
     }
+
+
+    /**
+     * Finds the K largest of an array without changing it, which makes it safe to use on an array that other
+     * threads are reading. Every thread scans its part of the array into a heap of K, so nothing is allocated
+     * in proportion to the length of the array, and there is no need to copy it first.
+     * @param array the array, left unchanged
+     * @param K number of largest elements
+     * @param out receives the K largest (all elements, if there are fewer), largest first
+     * @return number of elements written to out
+     */
+    static int findLargest(int[] array, int K, int[] out){
+        if (K < 1 || array.length == 0) return 0;
+        return scanHeaps(array, K).drainSorted(out, null);
+    }
+
+
+    /**
+     * Heap mode: the K largest are found with scanHeaps, which only reads the array, and then the winners
+     * are swapped to the front.
+     */
+    private void initHeap() {
+        int[] values = new int[K];
+        int[] indices = new int[K];
+        scanHeaps(array, K).drainSorted(values, indices);
+        moveToFront(values, indices);
+    }
+
+
+    /**
+     * Every thread finds the K largest of its part of the array with a heap, and the heaps are merged.
+     * @return a heap with the K largest of the array, and their positions
+     */
+    private static IntTopK scanHeaps(int[] array, int K) {
+        int threads = Math.max(1, Math.min(WorkerPool.getParallelism(), array.length / K));
+        int elementsPerThread = array.length / threads;
+
+        HeapWorker[] workers = new HeapWorker[threads];
+        for (int i = 0; i < threads - 1; i++){
+            workers[i] = new HeapWorker(array, K, i * elementsPerThread, (i+1) * elementsPerThread);
+        }
+        workers[threads - 1] = new HeapWorker(array, K, (threads - 1) * elementsPerThread, array.length);
+        WorkerPool.invokeAll(workers);
+
+        IntTopK topK = workers[0].heap;
+        for (int i = 1; i < threads; i++) topK.merge(workers[i].heap);
+        return topK;
+    }
+
+
+    /**
+     * Puts the K largest, sorted, in the first K places. The elements which were there and are not among the
+     * K largest are moved to the places the K largest came from, so the array keeps all of its elements.
+     * @param values the K largest, largest first
+     * @param indices where each of the K largest are in the array
+     */
+    private void moveToFront(int[] values, int[] indices) {
+        boolean[] isWinner = new boolean[K];        // does the place in the front already hold one of the K largest?
+        for (int index : indices) {
+            if (index < K) isWinner[index] = true;
+        }
+        int free = 0;
+        for (int index : indices) {
+            if (index >= K) {
+                while (isWinner[free]) free++;
+                array[index] = array[free++];
+            }
+        }
+        System.arraycopy(values, 0, array, 0, K);
+    }
+
+
+    static class HeapWorker implements Runnable{
+        final int[] array;
+        final int start, end;
+        final IntTopK heap;
+
+        HeapWorker(int[] array, int K, int start, int end){
+            this.array = array;
+            this.start = start;
+            this.end = end;
+            heap = new IntTopK(K);
+        }
+
+        @Override
+        public void run() {
+            heap.offerAll(array, start, end);
+        }
+    }
 }
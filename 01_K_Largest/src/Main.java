@@ -54,7 +54,7 @@ public class Main {
         return a;
     }
 
-    private boolean kLargestAreEquel(int[] a, int[] b, int[] c, int k){
+    private boolean kLargestAreEquel(int[] a, int[] b, int[] c, int[] d, int k){
         for (int i = 0; i < k; i++) {
             if (a[a.length - i - 1] != b[i]) {
                 System.out.println("a[i]:" + a[a.length - i - 1] + "\tb[i]" + b[i]);
@@ -65,6 +65,11 @@ public class Main {
                 System.out.println("a[i]:" + a[a.length - i - 1] + "\tc[i]" + c[i]);
                 return false;
             }
+
+            if (a[a.length - i - 1] != d[i]) {
+                System.out.println("a[i]:" + a[a.length - i - 1] + "\td[i]" + d[i]);
+                return false;
+            }
         }
         return true;
     }
@@ -78,7 +83,10 @@ public class Main {
         }
     }
 
-    private double time(int[] array, int k, int methode){
+    /**
+     * @param largest receives the k largest for methode 4, which leaves the array unchanged
+     */
+    private double time(int[] array, int k, int methode, int[] largest){
         long start, end;
         K_Largest p = null;
         if (methode == 3) p = new K_Largest(array, k);
@@ -86,7 +94,8 @@ public class Main {
         start = System.nanoTime();
         if (methode == 1) Arrays.sort(array);
         else if (methode == 2) insertSort(array, k);
-        else p.init();
+        else if (methode == 3) p.init();
+        else K_Largest.findLargest(array, k, largest);
         end = System.nanoTime();
 
         return  (end - start) / 1000000.0;
@@ -95,7 +104,7 @@ public class Main {
     private void printInfo(int[][] array, double[][][] times) {
         // Prints time info
         String s;
-        for (int x = 0; x < 3; x++){
+        for (int x = 0; x < times.length; x++){
             System.out.println();
             for (int i = 0; i < array[0].length; i++) {
                 System.out.printf("A%d:\tN: %-9d", x+1, array[0][i]);
@@ -108,38 +117,44 @@ public class Main {
     }
     
     private void test(int seed, int[] n_array, int[] k_array) {
-        int[] array1 = new int[0], array2 = new int[0], array3 = new int[0];
+        int[] array1 = new int[0], array2 = new int[0], array3 = new int[0], largest;
         double[][] times_a1 = new double[n_array.length][k_array.length];
         double[][] times_a2 = new double[n_array.length][k_array.length];
         double[][] times_a3 = new double[n_array.length][k_array.length];
+        double[][] times_a4 = new double[n_array.length][k_array.length];
         double[] median_a1 = new double[7];
         double[] median_a2 = new double[7];
         double[] median_a3 = new double[7];
+        double[] median_a4 = new double[7];
 
         System.out.println();
         for (int i = 0; i < n_array.length; i++) {
             for (int j = 0; j < k_array.length; j++) {
+                largest = new int[k_array[j]];
                 for (int x = 0; x < median_a1.length; x++) {
                     array1 = randomArray(n_array[i], seed);
+                    median_a4[x] = time(array1, k_array[j], 4, largest);      // leaves array1 as it is
                     array2 = Arrays.copyOf(array1, array1.length);
                     array3 = Arrays.copyOf(array1, array1.length);
-                    median_a1[x] = time(array1, k_array[j], 1);
-                    median_a2[x] = time(array2, k_array[j], 2);
-                    median_a3[x] = time(array3, k_array[j], 3);
+                    median_a1[x] = time(array1, k_array[j], 1, null);
+                    median_a2[x] = time(array2, k_array[j], 2, null);
+                    median_a3[x] = time(array3, k_array[j], 3, null);
                 }
-                if (kLargestAreEquel(array1, array2, array3, k_array[j]))
-                     System.out.printf("Array1 == Array2 == Array3\tN: %-9d\tK: %-3d%n", n_array[i], k_array[j]);
+                if (kLargestAreEquel(array1, array2, array3, largest, k_array[j]))
+                     System.out.printf("Array1 == Array2 == Array3 == Array4\tN: %-9d\tK: %-3d%n", n_array[i], k_array[j]);
                 else System.out.printf("Arrays are not equal!\tN: %-9d\tK: %-3d%n", n_array[i], k_array[j]);
 
                 Arrays.sort(median_a1);
                 Arrays.sort(median_a2);
                 Arrays.sort(median_a3);
+                Arrays.sort(median_a4);
                 times_a1[i][j] = median_a1[median_a1.length / 2];
                 times_a2[i][j] = median_a2[median_a2.length / 2];
                 times_a3[i][j] = median_a3[median_a3.length / 2];
+                times_a4[i][j] = median_a4[median_a4.length / 2];
             }
         }
-        printInfo(new int[][]{n_array, k_array}, new double[][][]{times_a1, times_a2, times_a3});
+        printInfo(new int[][]{n_array, k_array}, new double[][][]{times_a1, times_a2, times_a3, times_a4});
     }
 
 
@@ -167,5 +182,6 @@ public class Main {
             j++;
         }
         m.test(seed, nArray, new int[]{20, 100});
+        m.test(seed, new int[]{100000, 1000000}, new int[]{1000, 10000});  // K_Largest in its heap and selection modes
     }
 }
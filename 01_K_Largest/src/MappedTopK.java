@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The K largest ints of a binary file of little-endian int32 values, which may be far larger than the heap.
+ * The file is never read into an int[]: it is memory-mapped one segment at a time with FileChannel.map, and the
+ * threads take the segments one after another and read them through an IntBuffer view, a small chunk at a time,
+ * into their own heap of K. Only the chunks and the heaps are on the Java heap, so the cost is one sequential
+ * pass over the file, and the threads keep the disk (or the page cache) busy.
+ */
+public class MappedTopK {
+    static final long SEGMENT_BYTES = 1L << 28;     // 256 MB mapped at a time, a multiple of 4
+    private static final int CHUNK = 1 << 14;       // ints copied out of the mapping at a time
+
+    private MappedTopK() {}
+
+
+    /**
+     * @param file binary file of little-endian int32 values
+     * @param K number of largest values to find
+     * @return the K largest values of the file (all of them, if there are fewer), largest first
+     * @throws IOException if the file can't be read
+     */
+    public static int[] largest(Path file, int K) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % Integer.BYTES != 0)
+                throw new IllegalArgumentException(file + " is " + size + " bytes long, which is not a whole number of ints");
+            if (K < 1 || size == 0) return new int[0];
+
+            long segments = (size + SEGMENT_BYTES - 1) / SEGMENT_BYTES;
+            int threads = (int) Math.max(1, Math.min(WorkerPool.getParallelism(), segments));
+            AtomicLong nextSegment = new AtomicLong();
+
+            SegmentWorker[] workers = new SegmentWorker[threads];
+            for (int i = 0; i < threads; i++) workers[i] = new SegmentWorker(channel, size, K, nextSegment);
+            try {
+                WorkerPool.invokeAll(workers);
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            IntTopK topK = workers[0].heap;
+            for (int i = 1; i < threads; i++) topK.merge(workers[i].heap);
+            return topK.toSortedArray();
+        }
+    }
+
+
+    /**
+     * Writes an array as a binary file of little-endian int32 values, the format largest(..) reads.
+     * @param file the file, replaced if it exists
+     * @param array the values
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path file, int[] array) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = (long) array.length * Integer.BYTES;
+            for (long position = 0; position < size; position += SEGMENT_BYTES) {
+                long length = Math.min(SEGMENT_BYTES, size - position);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+                segment.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+                        .put(array, (int) (position / Integer.BYTES), (int) (length / Integer.BYTES));
+            }
+        }
+    }
+
+
+    private static class SegmentWorker implements Runnable {
+        final FileChannel channel;
+        final long size;
+        final AtomicLong nextSegment;
+        final IntTopK heap;
+
+        SegmentWorker(FileChannel channel, long size, int K, AtomicLong nextSegment) {
+            this.channel = channel;
+            this.size = size;
+            this.nextSegment = nextSegment;
+            heap = new IntTopK(K);
+        }
+
+        @Override
+        public void run() {
+            int[] chunk = new int[CHUNK];
+            long position;
+            while ((position = nextSegment.getAndIncrement() * SEGMENT_BYTES) < size) {
+                IntBuffer ints;
+                try {
+                    ints = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_BYTES, size - position))
+                            .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                while (ints.hasRemaining()) {
+                    int n = Math.min(CHUNK, ints.remaining());
+                    ints.get(chunk, 0, n);
+                    heap.offerAll(chunk, 0, n);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers many top-K questions about the same array in one parallel pass over it. A question (Query) asks
+ * for the K largest in a range of the array, e.g. top-20, top-100 and top-1000 of the whole array, and the
+ * top-10 of every shard of 1000 elements, all at once.
+ *
+ * Queries asking about the same range share one heap, made as large as the largest K asked for the range;
+ * the smaller K's are answered with the front of its result. Every thread scans its part of the array once.
+ * Its part is cut at the ends of the ranges into pieces where the same set of ranges is active, and each
+ * element of a piece is offered to the heaps of those ranges. In the end, the heaps the threads made for a
+ * range are merged. The array is only read.
+ */
+public class MultiTopK {
+
+    /**
+     * A question about the K largest of array[from], ..., array[to - 1].
+     */
+    public static final class Query {
+        final int from, to, k;
+
+        public Query(int from, int to, int k) {
+            if (from < 0 || from > to || k < 1)
+                throw new IllegalArgumentException(String.format("Illegal query [%d, %d) k = %d", from, to, k));
+            this.from = from;
+            this.to = to;
+            this.k = k;
+        }
+    }
+
+
+    private MultiTopK() {}
+
+
+    /**
+     * @param n length of the array
+     * @param partSize number of elements in each part, the last part may be shorter
+     * @param k number of largest to find in each part
+     * @return one query for every part of the array
+     */
+    public static Query[] partitions(int n, int partSize, int k) {
+        Query[] queries = new Query[(n + partSize - 1) / partSize];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = new Query(i * partSize, Math.min(n, (i+1) * partSize), k);
+        }
+        return queries;
+    }
+
+
+    public static int[][] answer(int[] array, List<Query> queries) {
+        return answer(array, queries.toArray(new Query[0]));
+    }
+
+
+    /**
+     * @param array the array, left unchanged
+     * @param queries the questions
+     * @return for each query, in the same order, the K largest of its range (fewer if the range is shorter), largest first
+     */
+    public static int[][] answer(int[] array, Query... queries) {
+        // Give every distinct range an id, and find the largest K asked for it
+        Map<Long, Integer> ids = new HashMap<>();
+        int[] queryRange = new int[queries.length];
+        int[] from = new int[queries.length], to = new int[queries.length], k = new int[queries.length];
+        int nrOfRanges = 0;
+        for (int q = 0; q < queries.length; q++) {
+            Query query = queries[q];
+            if (query.to > array.length)
+                throw new IllegalArgumentException("Query ends at " + query.to + ", beyond the array of " + array.length);
+            Integer id = ids.putIfAbsent(((long) query.from << 32) | query.to, nrOfRanges);
+            if (id == null) {
+                id = nrOfRanges++;
+                from[id] = query.from;
+                to[id] = query.to;
+            }
+            k[id] = Math.max(k[id], query.k);
+            queryRange[q] = id;
+        }
+        Ranges ranges = new Ranges(Arrays.copyOf(from, nrOfRanges), Arrays.copyOf(to, nrOfRanges), Arrays.copyOf(k, nrOfRanges));
+
+        // Scan
+        int threads = Math.max(1, Math.min(WorkerPool.getParallelism(), array.length / 2));
+        int elementsPerThread = array.length / threads;
+        Scanner[] scanners = new Scanner[threads];
+        for (int i = 0; i < threads; i++) {
+            int end = (i == threads - 1) ? array.length : (i+1) * elementsPerThread;
+            scanners[i] = new Scanner(array, ranges, i * elementsPerThread, end);
+        }
+        WorkerPool.invokeAll(scanners);
+
+        // Merge the heaps of every range, and sort them
+        int[][] rangeResults = new int[nrOfRanges][];
+        int mergers = Math.max(1, Math.min(threads, nrOfRanges));
+        Runnable[] tasks = new Runnable[mergers];
+        for (int i = 0; i < mergers; i++) {
+            int id = i;
+            tasks[i] = () -> {
+                for (int r = id; r < rangeResults.length; r += mergers) {
+                    IntTopK merged = null;
+                    for (Scanner scanner : scanners) {
+                        IntTopK heap = scanner.heaps[r];
+                        if (heap == null) continue;
+                        if (merged == null) merged = heap;
+                        else merged.merge(heap);
+                    }
+                    rangeResults[r] = (merged == null) ? new int[0] : merged.toSortedArray();
+                }
+            };
+        }
+        WorkerPool.invokeAll(tasks);
+
+        int[][] results = new int[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            int[] rangeResult = rangeResults[queryRange[q]];
+            results[q] = Arrays.copyOf(rangeResult, Math.min(queries[q].k, rangeResult.length));
+        }
+        return results;
+    }
+
+
+    /**
+     * The distinct ranges, with their ids sorted by where they start and by where they end.
+     */
+    private static final class Ranges {
+        final int[] from, to, k;
+        final int[] byFrom, byTo;
+
+        Ranges(int[] from, int[] to, int[] k) {
+            this.from = from; this.to = to; this.k = k;
+            byFrom = sortedIds(from);
+            byTo = sortedIds(to);
+        }
+
+        private static int[] sortedIds(int[] key) {
+            long[] pairs = new long[key.length];
+            for (int i = 0; i < key.length; i++) pairs[i] = ((long) key[i] << 32) | i;
+            Arrays.sort(pairs);
+            int[] ids = new int[key.length];
+            for (int i = 0; i < key.length; i++) ids[i] = (int) pairs[i];
+            return ids;
+        }
+    }
+
+
+    private static class Scanner implements Runnable {
+        final int[] array;
+        final Ranges ranges;
+        final int start, end;
+        final IntTopK[] heaps;        // by range id, null for ranges outside this thread's part
+
+        Scanner(int[] array, Ranges ranges, int start, int end) {
+            this.array = array;
+            this.ranges = ranges;
+            this.start = start;
+            this.end = end;
+            heaps = new IntTopK[ranges.from.length];
+        }
+
+        @Override
+        public void run() {
+            int[] byFrom = ranges.byFrom, byTo = ranges.byTo;
+            int[] active = new int[byFrom.length];
+            int nrOfActive = 0;
+            int f = 0, t = 0;           // next range to start, and next range to end
+
+            // Ranges which have started before this part and end inside it or after it are active from the start
+            while (f < byFrom.length && ranges.from[byFrom[f]] <= start) {
+                int r = byFrom[f++];
+                if (ranges.to[r] > start) active[nrOfActive++] = r;
+            }
+            while (t < byTo.length && ranges.to[byTo[t]] <= start) t++;
+
+            int pos = start;
+            while (pos < end) {
+                int next = end;         // the next place where the set of active ranges changes
+                if (f < byFrom.length) next = Math.min(next, ranges.from[byFrom[f]]);
+                if (t < byTo.length) next = Math.min(next, ranges.to[byTo[t]]);
+
+                if (next > pos) scan(pos, next, active, nrOfActive);
+                pos = next;
+
+                while (t < byTo.length && ranges.to[byTo[t]] == pos) {        // ranges ending here
+                    int r = byTo[t++];
+                    for (int i = 0; i < nrOfActive; i++) {
+                        if (active[i] == r) {
+                            active[i] = active[--nrOfActive];
+                            break;
+                        }
+                    }
+                }
+                while (f < byFrom.length && ranges.from[byFrom[f]] == pos) {  // ranges starting here
+                    int r = byFrom[f++];
+                    if (ranges.to[r] > pos) active[nrOfActive++] = r;
+                }
+            }
+        }
+
+        private void scan(int from, int to, int[] active, int nrOfActive) {
+            if (nrOfActive == 0) return;
+            for (int i = 0; i < nrOfActive; i++) {
+                if (heaps[active[i]] == null) heaps[active[i]] = new IntTopK(ranges.k[active[i]]);
+            }
+            if (nrOfActive == 1) {
+                heaps[active[0]].offerAll(array, from, to);
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int value = array[i];
+                for (int j = 0; j < nrOfActive; j++) heaps[active[j]].offer(value, i);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.util.Arrays;
+
+/**
+ * Moves the K largest elements of an array to the front, sorted from largest to smallest, with quickselect.
+ * This is the right tool when K is a large part of n (from about 1 % and up): a heap or insertion would have to
+ * keep too many elements in order, and sorting the whole array does a lot of work on elements we don't need.
+ *
+ * Each round picks a pivot from a sample of the range, aiming at a pivot which has a bit more than K elements
+ * larger than or equal to it, and partitions the range around it in place. Large ranges are partitioned by all
+ * threads: every thread partitions its own block, and then the elements on the wrong side of the final border
+ * are swapped across it, also in parallel. The range shrinks to one side of the pivot until the K largest are
+ * all in the front, which is then sorted. If a range does not shrink fast enough (bad pivots), it is sorted instead.
+ *
+ * The elements after the first K are left in an unspecified order, but the array keeps all its elements.
+ */
+class ParallelSelect {
+    private static final int SORT_CUTOFF = 1 << 12;          // smaller ranges are just sorted
+    private static final int SEQUENTIAL_CUTOFF = 1 << 16;    // smaller ranges are partitioned by one thread
+    private static final int SAMPLE_SIZE = 255;
+
+    private final int[] a;
+    private final int threads;
+
+
+    ParallelSelect(int[] a) {
+        this.a = a;
+        threads = WorkerPool.getParallelism();
+    }
+
+
+    /**
+     * @param K number of largest elements to move to the front, 0 < K <= a.length
+     */
+    void selectLargest(int K) {
+        int lo = 0, hi = a.length, k = K;    // the k largest of a[lo, hi) are missing, a[0, lo) are all among the K largest
+        int rounds = 2 * (32 - Integer.numberOfLeadingZeros(a.length));
+        boolean found = false;
+
+        while (!found && hi - lo > SORT_CUTOFF && rounds-- > 0) {
+            int pivot = samplePivot(lo, hi, k);
+            int greater = (pivot == Integer.MAX_VALUE) ? 0 : partition(lo, hi, pivot + 1);
+
+            if (greater >= k) {             // the k largest are all larger than the pivot
+                hi = lo + greater;
+                found = greater == k;
+                continue;
+            }
+            int equal = partition(lo + greater, hi, pivot);
+            if (greater + equal >= k) found = true;
+            else {
+                lo += greater + equal;
+                k -= greater + equal;
+            }
+        }
+        if (!found) sortDescending(lo, hi);
+        sortDescending(0, K);
+    }
+
+
+    /**
+     * Picks a pivot from an evenly spaced sample of a[lo, hi), such that (judging by the sample) a little more
+     * than k elements are larger than or equal to it.
+     */
+    private int samplePivot(int lo, int hi, int k) {
+        int len = hi - lo;
+        int[] sample = new int[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            sample[i] = a[lo + (int) ((long) i * len / SAMPLE_SIZE)];
+        }
+        Arrays.sort(sample);
+
+        int rankFromTop = (int) ((long) k * SAMPLE_SIZE / len) + (int) Math.sqrt(SAMPLE_SIZE);   // with a margin
+        return sample[Math.max(0, SAMPLE_SIZE - 1 - rankFromTop)];
+    }
+
+
+    /**
+     * Moves all elements >= t in a[lo, hi) to the front of the range.
+     * @return number of elements >= t
+     */
+    private int partition(int lo, int hi, int t) {
+        if (threads == 1 || hi - lo < SEQUENTIAL_CUTOFF) return partitionSequential(lo, hi, t);
+        return partitionParallel(lo, hi, t);
+    }
+
+
+    private int partitionSequential(int lo, int hi, int t) {
+        int i = lo, j = hi - 1, temp;
+        while (true) {
+            while (i <= j && a[i] >= t) i++;
+            while (i <= j && a[j] < t) j--;
+            if (i > j) return i - lo;
+            temp = a[i];
+            a[i++] = a[j];
+            a[j--] = temp;
+        }
+    }
+
+
+    private int partitionParallel(int lo, int hi, int t) {
+        int blockSize = (hi - lo) / threads;
+        BlockPartitioner[] partitioners = new BlockPartitioner[threads];
+        for (int i = 0; i < threads - 1; i++) {
+            partitioners[i] = new BlockPartitioner(lo + i * blockSize, lo + (i+1) * blockSize, t);
+        }
+        partitioners[threads - 1] = new BlockPartitioner(lo + (threads - 1) * blockSize, hi, t);
+        WorkerPool.invokeAll(partitioners);
+
+        int greater = 0;
+        for (BlockPartitioner p : partitioners) greater += p.count;
+        int border = lo + greater;
+
+        // Every block is now [ >= t | < t ]. Find the parts on the wrong side of the border:
+        // elements < t in front of it, and elements >= t behind it. There are as many of each.
+        int[] smallStart = new int[threads], smallEnd = new int[threads];
+        int[] largeStart = new int[threads], largeEnd = new int[threads];
+        int misplaced = 0;
+        for (int i = 0; i < threads; i++) {
+            BlockPartitioner p = partitioners[i];
+            int split = p.start + p.count;
+            smallStart[i] = split;
+            smallEnd[i] = Math.max(split, Math.min(p.end, border));
+            largeStart[i] = Math.min(split, Math.max(p.start, border));
+            largeEnd[i] = split;
+            misplaced += smallEnd[i] - smallStart[i];
+        }
+        if (misplaced == 0) return greater;
+
+        int swappers = Math.min(threads, Math.max(1, misplaced / SORT_CUTOFF));
+        int swapsPerThread = misplaced / swappers;
+        Swapper[] tasks = new Swapper[swappers];
+        for (int i = 0; i < swappers - 1; i++) {
+            tasks[i] = new Swapper(i * swapsPerThread, (i+1) * swapsPerThread, smallStart, smallEnd, largeStart, largeEnd);
+        }
+        tasks[swappers - 1] = new Swapper((swappers - 1) * swapsPerThread, misplaced, smallStart, smallEnd, largeStart, largeEnd);
+        WorkerPool.invokeAll(tasks);
+
+        return greater;
+    }
+
+
+    private class BlockPartitioner implements Runnable {
+        final int start, end, t;
+        int count;
+
+        BlockPartitioner(int start, int end, int t) {
+            this.start = start; this.end = end; this.t = t;
+        }
+
+        @Override
+        public void run() {
+            count = partitionSequential(start, end, t);
+        }
+    }
+
+
+    /**
+     * Swaps the misplaced elements with number from, ..., to - 1 (counting through the intervals in order)
+     * of the small list with the ones of the large list.
+     */
+    private class Swapper implements Runnable {
+        final int from, to;
+        final int[] smallStart, smallEnd, largeStart, largeEnd;
+
+        Swapper(int from, int to, int[] smallStart, int[] smallEnd, int[] largeStart, int[] largeEnd) {
+            this.from = from; this.to = to;
+            this.smallStart = smallStart; this.smallEnd = smallEnd;
+            this.largeStart = largeStart; this.largeEnd = largeEnd;
+        }
+
+        @Override
+        public void run() {
+            if (from == to) return;
+            int s = 0, l = 0, n;
+            for (n = from; n >= smallEnd[s] - smallStart[s]; s++) n -= smallEnd[s] - smallStart[s];
+            int sPos = smallStart[s] + n;
+            for (n = from; n >= largeEnd[l] - largeStart[l]; l++) n -= largeEnd[l] - largeStart[l];
+            int lPos = largeStart[l] + n;
+
+            int temp;
+            for (int i = from; i < to; i++) {
+                while (sPos == smallEnd[s]) sPos = smallStart[++s];
+                while (lPos == largeEnd[l]) lPos = largeStart[++l];
+                temp = a[sPos];
+                a[sPos++] = a[lPos];
+                a[lPos++] = temp;
+            }
+        }
+    }
+
+
+    private void sortDescending(int from, int to) {
+        WorkerPool.invokeAll(() -> Arrays.parallelSort(a, from, to));
+        int temp;
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            temp = a[i];
+            a[i] = a[j];
+            a[j] = temp;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The K largest of the latest values of a stream, where old values expire: either the last 'size' values
+ * (count window) or the values of the last 'duration' (time window). Many threads can add values at the same time.
+ *
+ * The window is cut into panes (slices), and every pane keeps only the K largest of its own values in an IntTopK.
+ * When the window slides, the oldest pane is simply emptied and reused, so values expire one pane at a time and
+ * the window covers between 'size' and 'size + size / nrOfPanes' values (or the same in time).
+ *
+ * Producers don't share a lock: each thread adds to one of a set of striped buffers, which are emptied into
+ * their pane when full. A query empties the buffers, merges the K largest of the closed panes (cached until the
+ * window slides) with the K largest of the current pane. It never looks at the values themselves again, so it
+ * costs O(K * nrOfPanes) at most, and O(K) while the window stays put.
+ */
+public class SlidingTopK {
+    private static final int STRIPE_BUFFER_SIZE = 256;
+
+    private final int K;
+    private final boolean timeWindow;
+    private final long paneLength;          // number of values, or nanoseconds, in a pane
+    private final long origin = System.nanoTime();
+    private final Pane[] panes;             // nrOfPanes closed panes + the one being filled
+    private final Stripe[] stripes;
+    private final AtomicLong count = new AtomicLong();
+
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final IntTopK closedTopK;       // the K largest of the closed panes in the window
+    private long closedTopKPane = -1;       // pane that was the current one when closedTopK was made
+    private volatile boolean closedTopKStale;
+
+
+    private SlidingTopK(int K, boolean timeWindow, long paneLength, int nrOfPanes) {
+        if (nrOfPanes < 1 || paneLength < 1)
+            throw new IllegalArgumentException("The window must have at least one pane, and panes can't be empty");
+        this.K = K;
+        this.timeWindow = timeWindow;
+        this.paneLength = paneLength;
+
+        panes = new Pane[nrOfPanes + 1];
+        for (int i = 0; i < panes.length; i++) panes[i] = new Pane();
+        closedTopK = new IntTopK(K);
+
+        int nrOfStripes = Integer.highestOneBit(2 * WorkerPool.getParallelism() - 1) << 1;
+        stripes = new Stripe[nrOfStripes];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Stripe();
+    }
+
+
+    /**
+     * @param K number of largest values to report
+     * @param size number of latest values in the window
+     * @param nrOfPanes number of slices the window is cut into, more panes means more precise expiry
+     */
+    public static SlidingTopK countWindow(int K, long size, int nrOfPanes) {
+        return new SlidingTopK(K, false, (size + nrOfPanes - 1) / nrOfPanes, nrOfPanes);
+    }
+
+
+    /**
+     * @param K number of largest values to report
+     * @param duration how long a value stays in the window
+     * @param unit unit of duration
+     * @param nrOfPanes number of slices the window is cut into, more panes means more precise expiry
+     */
+    public static SlidingTopK timeWindow(int K, long duration, TimeUnit unit, int nrOfPanes) {
+        long nanos = unit.toNanos(duration);
+        return new SlidingTopK(K, true, (nanos + nrOfPanes - 1) / nrOfPanes, nrOfPanes);
+    }
+
+
+    /**
+     * Adds a value to the window. Safe to call from many threads.
+     * @param value the value
+     */
+    public void add(int value) {
+        long pane = timeWindow ? currentPane() : count.getAndIncrement() / paneLength;
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+
+        stripe.lock.lock();
+        try {
+            if (stripe.size == STRIPE_BUFFER_SIZE || (stripe.size > 0 && stripe.pane != pane)) flush(stripe);
+            stripe.pane = pane;
+            stripe.buffer[stripe.size++] = value;
+        }
+        finally { stripe.lock.unlock(); }
+    }
+
+
+    /**
+     * @return the K largest values in the window (fewer if the window holds fewer), largest first.
+     */
+    public int[] topK() {
+        long now = currentPane();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try { if (stripe.size > 0) flush(stripe); }
+            finally { stripe.lock.unlock(); }
+        }
+
+        cacheLock.lock();
+        try {
+            if (closedTopKPane != now || closedTopKStale) {
+                closedTopKStale = false;
+                closedTopK.clear();
+                for (long id = now - panes.length + 1; id < now; id++) mergePane(closedTopK, id);
+                closedTopKPane = now;
+            }
+            IntTopK result = new IntTopK(K);
+            result.merge(closedTopK);
+            mergePane(result, now);
+            return result.toSortedArray();
+        }
+        finally { cacheLock.unlock(); }
+    }
+
+
+    private long currentPane() {
+        if (timeWindow) return (System.nanoTime() - origin) / paneLength;
+        return count.get() / paneLength;
+    }
+
+
+    private void mergePane(IntTopK topK, long id) {
+        if (id < 0) return;
+        Pane pane = panes[(int) (id % panes.length)];
+        pane.lock.lock();
+        try { if (pane.id == id) topK.merge(pane.topK); }
+        finally { pane.lock.unlock(); }
+    }
+
+
+    /**
+     * Empties a stripe's buffer into the pane its values belong to. The caller must hold the stripe's lock.
+     */
+    private void flush(Stripe stripe) {
+        Pane pane = panes[(int) (stripe.pane % panes.length)];
+        pane.lock.lock();
+        try {
+            if (pane.id < stripe.pane) {            // the pane is reused, its old values have expired
+                pane.topK.clear();
+                pane.id = stripe.pane;
+            }
+            if (pane.id == stripe.pane) {           // else the buffered values have already expired
+                for (int i = 0; i < stripe.size; i++) pane.topK.offer(stripe.buffer[i]);
+                if (stripe.pane < currentPane()) closedTopKStale = true;
+            }
+        }
+        finally { pane.lock.unlock(); }
+        stripe.size = 0;
+    }
+
+
+    private class Pane {
+        final ReentrantLock lock = new ReentrantLock();
+        final IntTopK topK = new IntTopK(K);
+        long id = -1;
+    }
+
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final int[] buffer = new int[STRIPE_BUFFER_SIZE];
+        int size;
+        long pane;
+    }
+}
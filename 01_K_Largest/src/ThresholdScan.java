@@ -0,0 +1,43 @@
+/**
+ * Finds the next element of an array which is larger than a threshold. Once a top-K has warmed up, almost every
+ * element is smaller than its threshold, so this is where the time of a top-K scan goes.
+ *
+ * The plain version compares one element at a time. If the Vector API is there, INSTANCE is a VectorThresholdScan
+ * (in src-vector), which compares a whole vector of elements at a time, and only hands over those that are above.
+ * The Vector API is an incubator module, so it has to be asked for at compile and run time:
+ *
+ *      javac -d out src/*.java
+ *      javac --add-modules jdk.incubator.vector -cp out -d out src-vector/*.java
+ *      java --add-modules jdk.incubator.vector -cp out Main
+ *
+ * Without the module (or without the compiled class), or with -Dklargest.vector=false, the plain version is used.
+ */
+class ThresholdScan {
+    static final ThresholdScan INSTANCE = load();
+
+
+    /**
+     * @param a the array
+     * @param from first position to look at
+     * @param to position after the last one to look at
+     * @param threshold the threshold
+     * @return the first position i in [from, to) where a[i] > threshold, or to if there is none
+     */
+    int nextAbove(int[] a, int from, int to, int threshold) {
+        for (int i = from; i < to; i++) {
+            if (a[i] > threshold) return i;
+        }
+        return to;
+    }
+
+
+    private static ThresholdScan load() {
+        if (!Boolean.parseBoolean(System.getProperty("klargest.vector", "true"))) return new ThresholdScan();
+        try {
+            return (ThresholdScan) Class.forName("VectorThresholdScan").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {     // not compiled, or jdk.incubator.vector is not added
+            return new ThresholdScan();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Finds where the K largest keys of an array are, in parallel, instead of the keys themselves.
+ * This is what we need to rank rows by a score and then fetch their IDs: ids[TopKIndices.of(scores, K)[0]]
+ * is the ID of the row with the largest score. Nothing is boxed and the keys are not copied, every thread just
+ * keeps (key, index) pairs in a primitive heap of its own, and the heaps are merged at the end.
+ *
+ * The input array is not changed. Ties are broken by position within a thread's part of the array.
+ */
+public class TopKIndices {
+    private static final int MIN_ELEMENTS_PER_THREAD = 1 << 14;
+
+    private TopKIndices() {}
+
+
+    /**
+     * @param keys the keys
+     * @param K number of largest keys
+     * @return the positions of the K largest keys (all of them if there are fewer), from the largest key and down
+     */
+    public static int[] of(int[] keys, int K) {
+        int k = Math.min(K, keys.length);
+        if (k < 1) return new int[0];
+
+        IntTopK[] heaps = new IntTopK[nrOfThreads(keys.length)];
+        runSegments(keys.length, heaps.length, (id, start, end) -> {
+            heaps[id] = new IntTopK(k);
+            heaps[id].offerAll(keys, start, end);
+        });
+        for (int i = 1; i < heaps.length; i++) heaps[0].merge(heaps[i]);
+
+        int[] indices = new int[k];
+        heaps[0].drainSorted(new int[k], indices);
+        return indices;
+    }
+
+
+    /**
+     * @see #of(int[], int)
+     */
+    public static int[] of(long[] keys, int K) {
+        int k = Math.min(K, keys.length);
+        if (k < 1) return new int[0];
+
+        LongTopK[] heaps = new LongTopK[nrOfThreads(keys.length)];
+        runSegments(keys.length, heaps.length, (id, start, end) -> {
+            heaps[id] = new LongTopK(k);
+            heaps[id].offerAll(keys, start, end);
+        });
+        for (int i = 1; i < heaps.length; i++) heaps[0].merge(heaps[i]);
+
+        int[] indices = new int[k];
+        heaps[0].drainSorted(new long[k], indices);
+        return indices;
+    }
+
+
+    /**
+     * NaN keys are skipped, so fewer than K positions are returned if there are not K other keys.
+     * @see #of(int[], int)
+     */
+    public static int[] of(double[] keys, int K) {
+        int k = Math.min(K, keys.length);
+        if (k < 1) return new int[0];
+
+        DoubleTopK[] heaps = new DoubleTopK[nrOfThreads(keys.length)];
+        runSegments(keys.length, heaps.length, (id, start, end) -> {
+            heaps[id] = new DoubleTopK(k);
+            heaps[id].offerAll(keys, start, end);
+        });
+        for (int i = 1; i < heaps.length; i++) heaps[0].merge(heaps[i]);
+
+        int[] indices = new int[heaps[0].size()];
+        heaps[0].drainSorted(new double[indices.length], indices);
+        return indices;
+    }
+
+
+    private static int nrOfThreads(int n) {
+        return Math.max(1, Math.min(WorkerPool.getParallelism(), n / MIN_ELEMENTS_PER_THREAD));
+    }
+
+
+    private interface Segment {
+        void scan(int id, int start, int end);
+    }
+
+
+    /**
+     * Splits [0, n) into nrOfThreads parts and scans them in the worker pool.
+     */
+    private static void runSegments(int n, int nrOfThreads, Segment segment) {
+        int elementsPerThread = n / nrOfThreads;
+        Runnable[] tasks = new Runnable[nrOfThreads];
+        for (int i = 0; i < nrOfThreads; i++) {
+            int id = i;
+            int start = i * elementsPerThread;
+            int end = (i == nrOfThreads - 1) ? n : (i+1) * elementsPerThread;
+            tasks[i] = () -> segment.scan(id, start, end);
+        }
+        WorkerPool.invokeAll(tasks);
+    }
+}
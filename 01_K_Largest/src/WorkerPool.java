@@ -0,0 +1,105 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A shared pool of worker threads that all the parallel algorithms submit their tasks to,
+ * so that a call does not have to pay for creating and starting new threads every time.
+ *
+ * The pool is created lazily the first time it is needed, and it is backed by a ForkJoinPool,
+ * which means that a task running inside the pool can wait for other tasks without blocking a worker.
+ * Its threads are daemon threads, so the pool never keeps the program alive.
+ *
+ * Typical use, replacing the old "new Thread(...).start() + CyclicBarrier(n + 1)" pattern:
+ *
+ *      WorkerPool.Phase phase = WorkerPool.submit(workers);
+ *      ... do some work on the calling thread ...
+ *      phase.await();
+ *
+ * or simply WorkerPool.invokeAll(workers), when the calling thread has nothing else to do.
+ */
+public final class WorkerPool {
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    private static ForkJoinPool pool;
+
+    private WorkerPool() {}
+
+
+    /**
+     * @return number of worker threads the algorithms should split their work between.
+     */
+    public static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+
+    /**
+     * Changes the number of worker threads. The old pool (if any) finishes its running tasks
+     * and is replaced by a new one the next time a task is submitted.
+     * @param k number of threads, k < 1 means the number of available processors.
+     */
+    public static synchronized void setParallelism(int k) {
+        int newParallelism = (k < 1) ? Runtime.getRuntime().availableProcessors() : k;
+        if (newParallelism == parallelism) return;
+
+        parallelism = newParallelism;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+
+    /**
+     * @return the underlying pool, created if it does not exist yet.
+     */
+    public static synchronized ForkJoinPool pool() {
+        if (pool == null) pool = new ForkJoinPool(parallelism);
+        return pool;
+    }
+
+
+    /**
+     * Submits all tasks to the pool and returns at once.
+     * @param tasks the tasks to run
+     * @return a phase which can be awaited for all the tasks to finish
+     */
+    public static Phase submit(Runnable... tasks) {
+        ForkJoinPool forkJoinPool = pool();
+        ForkJoinTask<?>[] submitted = new ForkJoinTask<?>[tasks.length];
+
+        for (int i = 0; i < tasks.length; i++) {
+            submitted[i] = ForkJoinTask.adapt(tasks[i]);
+            forkJoinPool.execute(submitted[i]);
+        }
+        return new Phase(submitted);
+    }
+
+
+    /**
+     * Runs all tasks in the pool and waits until every one of them has finished.
+     * @param tasks the tasks to run
+     */
+    public static void invokeAll(Runnable... tasks) {
+        submit(tasks).await();
+    }
+
+
+    /**
+     * A group of tasks submitted together. Awaiting a phase is what awaiting the
+     * CyclicBarrier used to be, but the worker threads do not have to take part in it.
+     */
+    public static final class Phase {
+        private final ForkJoinTask<?>[] tasks;
+
+        private Phase(ForkJoinTask<?>[] tasks) {
+            this.tasks = tasks;
+        }
+
+        /**
+         * Waits for all tasks in this phase. If a task failed, its exception is thrown here.
+         */
+        public void await() {
+            for (ForkJoinTask<?> task : tasks) task.join();
+        }
+    }
+}
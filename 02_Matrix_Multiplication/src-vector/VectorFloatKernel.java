@@ -0,0 +1,45 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * FloatKernel with fused multiply-adds on whole vectors of floats, of the widest species the CPU has.
+ * The micro-kernel computes MR rows of C times one vector of columns, so nr() is the number of lanes.
+ * Loaded by FloatKernel when jdk.incubator.vector is available.
+ */
+class VectorFloatKernel extends FloatKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+
+    @Override
+    int nr() {
+        return LANES;
+    }
+
+
+    @Override
+    void multiplyAdd(int depth, float[] pa, int ai, float[] pb, int bi,
+                     float[] c, int cIndex, int ldc, int height, int width, float[] edge) {
+        FloatVector c0 = FloatVector.zero(SPECIES), c1 = c0, c2 = c0, c3 = c0;
+        for (int p = 0; p < depth; p++, ai += MR, bi += LANES) {
+            FloatVector b = FloatVector.fromArray(SPECIES, pb, bi);
+            c0 = b.fma(FloatVector.broadcast(SPECIES, pa[ai]), c0);
+            c1 = b.fma(FloatVector.broadcast(SPECIES, pa[ai + 1]), c1);
+            c2 = b.fma(FloatVector.broadcast(SPECIES, pa[ai + 2]), c2);
+            c3 = b.fma(FloatVector.broadcast(SPECIES, pa[ai + 3]), c3);
+        }
+
+        if (height == MR && width == LANES) {
+            FloatVector.fromArray(SPECIES, c, cIndex).add(c0).intoArray(c, cIndex);
+            FloatVector.fromArray(SPECIES, c, cIndex + ldc).add(c1).intoArray(c, cIndex + ldc);
+            FloatVector.fromArray(SPECIES, c, cIndex + 2 * ldc).add(c2).intoArray(c, cIndex + 2 * ldc);
+            FloatVector.fromArray(SPECIES, c, cIndex + 3 * ldc).add(c3).intoArray(c, cIndex + 3 * ldc);
+            return;
+        }
+        c0.intoArray(edge, 0);
+        c1.intoArray(edge, LANES);
+        c2.intoArray(edge, 2 * LANES);
+        c3.intoArray(edge, 3 * LANES);
+        addEdge(edge, LANES, c, cIndex, ldc, height, width);
+    }
+}
@@ -0,0 +1,66 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * GemmKernel with fused multiply-adds on whole vectors of doubles, of the widest species the CPU has.
+ * The micro-kernel computes MR rows of C times one vector of columns, so nr() is the number of lanes.
+ * Loaded by GemmKernel when jdk.incubator.vector is available.
+ */
+class VectorGemmKernel extends GemmKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+
+    @Override
+    int nr() {
+        return LANES;
+    }
+
+
+    @Override
+    double dot(double[] x, int xi, double[] y, int yi, int length) {
+        // Four sums at a time, so the next fused multiply-add does not have to wait for the last one
+        DoubleVector s0 = DoubleVector.zero(SPECIES), s1 = s0, s2 = s0, s3 = s0;
+        int k = 0;
+        for (int bound = length - 4 * LANES; k <= bound; k += 4 * LANES) {
+            s0 = DoubleVector.fromArray(SPECIES, x, xi + k).fma(DoubleVector.fromArray(SPECIES, y, yi + k), s0);
+            s1 = DoubleVector.fromArray(SPECIES, x, xi + k + LANES).fma(DoubleVector.fromArray(SPECIES, y, yi + k + LANES), s1);
+            s2 = DoubleVector.fromArray(SPECIES, x, xi + k + 2 * LANES).fma(DoubleVector.fromArray(SPECIES, y, yi + k + 2 * LANES), s2);
+            s3 = DoubleVector.fromArray(SPECIES, x, xi + k + 3 * LANES).fma(DoubleVector.fromArray(SPECIES, y, yi + k + 3 * LANES), s3);
+        }
+        for (int bound = length - LANES; k <= bound; k += LANES) {
+            s0 = DoubleVector.fromArray(SPECIES, x, xi + k).fma(DoubleVector.fromArray(SPECIES, y, yi + k), s0);
+        }
+        double sum = s0.add(s1).add(s2.add(s3)).reduceLanes(VectorOperators.ADD);
+        for (; k < length; k++) sum = Math.fma(x[xi + k], y[yi + k], sum);     // the last elements, fewer than a vector
+        return sum;
+    }
+
+
+    @Override
+    void multiplyAdd(int depth, double[] pa, int ai, double[] pb, int bi,
+                     double[] c, int cIndex, int ldc, int height, int width, double[] edge) {
+        DoubleVector c0 = DoubleVector.zero(SPECIES), c1 = c0, c2 = c0, c3 = c0;
+        for (int p = 0; p < depth; p++, ai += MR, bi += LANES) {
+            DoubleVector b = DoubleVector.fromArray(SPECIES, pb, bi);
+            c0 = b.fma(DoubleVector.broadcast(SPECIES, pa[ai]), c0);
+            c1 = b.fma(DoubleVector.broadcast(SPECIES, pa[ai + 1]), c1);
+            c2 = b.fma(DoubleVector.broadcast(SPECIES, pa[ai + 2]), c2);
+            c3 = b.fma(DoubleVector.broadcast(SPECIES, pa[ai + 3]), c3);
+        }
+
+        if (height == MR && width == LANES) {
+            DoubleVector.fromArray(SPECIES, c, cIndex).add(c0).intoArray(c, cIndex);
+            DoubleVector.fromArray(SPECIES, c, cIndex + ldc).add(c1).intoArray(c, cIndex + ldc);
+            DoubleVector.fromArray(SPECIES, c, cIndex + 2 * ldc).add(c2).intoArray(c, cIndex + 2 * ldc);
+            DoubleVector.fromArray(SPECIES, c, cIndex + 3 * ldc).add(c3).intoArray(c, cIndex + 3 * ldc);
+            return;
+        }
+        c0.intoArray(edge, 0);
+        c1.intoArray(edge, LANES);
+        c2.intoArray(edge, 2 * LANES);
+        c3.intoArray(edge, 3 * LANES);
+        addEdge(edge, LANES, c, cIndex, ldc, height, width);
+    }
+}
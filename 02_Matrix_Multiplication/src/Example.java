@@ -15,18 +15,18 @@ public class Example {
 		int n = 5;
 
 		// Get the matrices
-		double[][] a = Oblig2Precode.generateMatrixA(seed, n);
-		double[][] b = Oblig2Precode.generateMatrixB(seed, n);
+		Matrix a = Oblig2Precode.generateMatrixA(seed, n);
+		Matrix b = Oblig2Precode.generateMatrixB(seed, n);
 
 		// The result matrix
-		double[][] c = new double[n][n];
+		Matrix c = new Matrix(n, n);
 
 		// Do the multiplication
 		// Clearly O(n^3)
 		for(int i=0;i<n;i++)
 			for(int j=0;j<n;j++)
 				for(int k=0;k<n;k++)
-					c[i][j] += a[i][k] * b[k][j];
+					c.set(i, j, c.get(i, j) + a.get(i, k) * b.get(k, j));
 
 		// Save the result
 		Oblig2Precode.saveResult(seed, Oblig2Precode.Mode.SEQ_NOT_TRANSPOSED, c);
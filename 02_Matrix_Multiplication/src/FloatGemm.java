@@ -0,0 +1,259 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache-blocked parallel multiplication of FloatMatrix operands, the way TiledGemm does it for doubles, in two
+ * precisions:
+ *
+ * - single (multiply): everything in float. Half the bytes of double for every block, and twice the products
+ *   per vector instruction (FloatKernel), so up to twice as fast, with about 7 significant digits.
+ * - mixed (multiplyMixed): the operands are stored as float, so they take half the memory and bandwidth, but
+ *   they are widened to double as they are packed, and multiplied and summed in double by the GemmKernel into a
+ *   Matrix of doubles. Only the rounding of the operands to float is lost, not the digits of the sums.
+ *
+ * The tiles of C are shared out between the threads as in TiledGemm.
+ */
+public class FloatGemm {
+    private static final int MR = GemmKernel.MR;
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final FloatKernel kernel = FloatKernel.INSTANCE;
+    private final GemmKernel doubleKernel = GemmKernel.INSTANCE;
+    private final int mc, kc, nc;
+
+
+    public FloatGemm() {
+        this(TiledGemm.DEFAULT_MC, TiledGemm.DEFAULT_KC, TiledGemm.DEFAULT_NC);
+    }
+
+
+    /**
+     * @param mc number of rows of A packed at a time
+     * @param kc depth of the blocks
+     * @param nc number of columns of B packed at a time
+     */
+    public FloatGemm(int mc, int kc, int nc) {
+        if (mc < 1 || kc < 1 || nc < 1) throw new IllegalArgumentException("Block sizes must be positive");
+        this.mc = TiledGemm.roundUp(mc, MR);
+        this.kc = kc;
+        this.nc = TiledGemm.roundUp(nc, kernel.nr());
+    }
+
+
+    /**
+     * Computes c = a * b in single precision, with all the threads of the WorkerPool.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public void multiply(FloatMatrix a, FloatMatrix b, FloatMatrix c) {
+        checkShapes(a, b, c.rows, c.cols);
+        run(a, b, c, null, false);
+    }
+
+
+    /**
+     * Computes c = a * b in double precision, from operands stored in single precision.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product
+     */
+    public void multiplyMixed(FloatMatrix a, FloatMatrix b, Matrix c) {
+        checkShapes(a, b, c.rows, c.cols);
+        run(a, b, null, c, false);
+    }
+
+
+    /**
+     * Computes c += a * b in double precision, from operands stored in single precision.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, the product is added to it
+     */
+    public void multiplyMixedAdd(FloatMatrix a, FloatMatrix b, Matrix c) {
+        checkShapes(a, b, c.rows, c.cols);
+        run(a, b, null, c, true);
+    }
+
+
+    /**
+     * @param mixed true for multiplyMixed, which sums into doubles, false for multiply
+     * @return the bytes an m x k by k x n product moves between the memory and the caches, see TiledGemm.bytesMoved
+     */
+    public long bytesMoved(int m, int k, int n, boolean mixed) {
+        return TiledGemm.bytesMoved(mc, kc, nc, m, k, n, 4, mixed ? 8 : 4);
+    }
+
+
+    private static void checkShapes(FloatMatrix a, FloatMatrix b, int rows, int cols) {
+        if (a.cols != b.rows || rows != a.rows || cols != b.cols)
+            throw new IllegalArgumentException(String.format("Can't multiply %d x %d by %d x %d into %d x %d",
+                    a.rows, a.cols, b.rows, b.cols, rows, cols));
+    }
+
+
+    /**
+     * Multiplies into c (single precision) or into d (mixed precision), whichever is not null.
+     */
+    private void run(FloatMatrix a, FloatMatrix b, FloatMatrix c, Matrix d, boolean accumulate) {
+        int m = a.rows, n = b.cols;
+        if (m == 0 || n == 0) return;
+        int nr = (c != null) ? kernel.nr() : doubleKernel.nr();
+
+        // Make the tiles smaller when there are too few of them to keep all threads busy
+        int threads = WorkerPool.getParallelism();
+        int tileRows = Math.min(mc, TiledGemm.roundUp(m, MR));
+        int tileCols = Math.min(TiledGemm.roundUp(nc, nr), TiledGemm.roundUp(n, nr));
+        while (TiledGemm.tiles(m, tileRows) * TiledGemm.tiles(n, tileCols) < 2 * threads) {
+            if (tileCols >= 2 * tileRows && tileCols > 4 * nr) tileCols = TiledGemm.roundUp(tileCols / 2, nr);
+            else if (tileRows > 4 * MR) tileRows = TiledGemm.roundUp(tileRows / 2, MR);
+            else break;
+        }
+
+        int nrOfTiles = TiledGemm.tiles(m, tileRows) * TiledGemm.tiles(n, tileCols);
+        AtomicInteger nextTile = new AtomicInteger();
+        TileWorker[] workers = new TileWorker[Math.min(threads, nrOfTiles)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new TileWorker(a, b, c, d, accumulate, nr, tileRows, tileCols, nextTile);
+        }
+        if (workers.length == 1) workers[0].run();
+        else WorkerPool.invokeAll(workers);
+    }
+
+
+    /**
+     * The packing buffers of a thread, for both precisions, kept from one multiplication to the next and grown when
+     * they are too small, as in TiledGemm.
+     */
+    private static final class Workspace {
+        float[] packedA = new float[0], packedB = new float[0], edge = new float[0];
+        double[] widePackedA = new double[0], widePackedB = new double[0], wideEdge = new double[0];
+
+        float[] grow(float[] buffer, int size) {
+            return (buffer.length >= size) ? buffer : new float[size];
+        }
+
+        double[] grow(double[] buffer, int size) {
+            return (buffer.length >= size) ? buffer : new double[size];
+        }
+    }
+
+
+    /**
+     * Takes tiles of C one after another until there are none left. In single precision it packs into float
+     * buffers for the FloatKernel, in mixed precision into double buffers for the GemmKernel.
+     */
+    private class TileWorker implements Runnable {
+        final FloatMatrix a, b, c;
+        final Matrix d;
+        final boolean accumulate;
+        final int nr, tileRows, tileCols;
+        final AtomicInteger nextTile;
+        float[] packedA, packedB, edge;
+        double[] widePackedA, widePackedB, wideEdge;
+
+        TileWorker(FloatMatrix a, FloatMatrix b, FloatMatrix c, Matrix d, boolean accumulate,
+                   int nr, int tileRows, int tileCols, AtomicInteger nextTile) {
+            this.a = a; this.b = b; this.c = c; this.d = d;
+            this.accumulate = accumulate;
+            this.nr = nr;
+            this.tileRows = tileRows;
+            this.tileCols = tileCols;
+            this.nextTile = nextTile;
+        }
+
+        @Override
+        public void run() {
+            int depth = Math.min(kc, a.cols);
+            Workspace workspace = WORKSPACE.get();
+            if (c != null) {
+                packedA = workspace.packedA = workspace.grow(workspace.packedA, tileRows * depth);
+                packedB = workspace.packedB = workspace.grow(workspace.packedB, depth * tileCols);
+                edge = workspace.edge = workspace.grow(workspace.edge, MR * nr);
+            }
+            else {
+                widePackedA = workspace.widePackedA = workspace.grow(workspace.widePackedA, tileRows * depth);
+                widePackedB = workspace.widePackedB = workspace.grow(workspace.widePackedB, depth * tileCols);
+                wideEdge = workspace.wideEdge = workspace.grow(workspace.wideEdge, MR * nr);
+            }
+
+            int colTiles = TiledGemm.tiles(b.cols, tileCols);
+            int nrOfTiles = TiledGemm.tiles(a.rows, tileRows) * colTiles;
+            int tile;
+            while ((tile = nextTile.getAndIncrement()) < nrOfTiles) {
+                int i0 = (tile / colTiles) * tileRows, j0 = (tile % colTiles) * tileCols;
+                multiplyTile(i0, j0, Math.min(tileRows, a.rows - i0), Math.min(tileCols, b.cols - j0));
+            }
+        }
+
+        private void multiplyTile(int i0, int j0, int rows, int cols) {
+            if (c != null) clear(c.data, c.offset + i0 * c.stride + j0, c.stride, rows, cols);
+            else if (!accumulate) d.view(i0, j0, rows, cols).clear();
+
+            for (int p0 = 0; p0 < a.cols; p0 += kc) {
+                int depth = Math.min(kc, a.cols - p0);
+                packB(p0, j0, depth, cols);
+                packA(i0, p0, rows, depth);
+
+                for (int jr = 0; jr < cols; jr += nr) {
+                    for (int ir = 0; ir < rows; ir += MR) {
+                        int height = Math.min(MR, rows - ir), width = Math.min(nr, cols - jr);
+                        if (c != null) {
+                            kernel.multiplyAdd(depth, packedA, ir * depth, packedB, jr * depth,
+                                    c.data, c.offset + (i0 + ir) * c.stride + j0 + jr, c.stride, height, width, edge);
+                        }
+                        else {
+                            doubleKernel.multiplyAdd(depth, widePackedA, ir * depth, widePackedB, jr * depth,
+                                    d.data, d.offset + (i0 + ir) * d.stride + j0 + jr, d.stride, height, width, wideEdge);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void clear(float[] data, int start, int stride, int rows, int cols) {
+            for (int i = 0; i < rows; i++) Arrays.fill(data, start + i * stride, start + i * stride + cols, 0);
+        }
+
+        /**
+         * Packs a[i0, i0 + rows) x [p0, p0 + depth) as slivers of MR rows, as TiledGemm does.
+         */
+        private void packA(int i0, int p0, int rows, int depth) {
+            float[] ad = a.data;
+            int pos = 0;
+            for (int ir = 0; ir < rows; ir += MR) {
+                int height = Math.min(MR, rows - ir);
+                int row = a.offset + (i0 + ir) * a.stride + p0;
+                for (int p = 0; p < depth; p++, pos += MR) {
+                    for (int r = 0; r < MR; r++) {
+                        float x = (r < height) ? ad[row + r * a.stride + p] : 0;
+                        if (c != null) packedA[pos + r] = x;
+                        else widePackedA[pos + r] = x;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Packs b[p0, p0 + depth) x [j0, j0 + cols) as slivers of nr columns, as TiledGemm does.
+         */
+        private void packB(int p0, int j0, int depth, int cols) {
+            float[] bd = b.data;
+            int pos = 0;
+            for (int jr = 0; jr < cols; jr += nr) {
+                int width = Math.min(nr, cols - jr);
+                int row = b.offset + p0 * b.stride + j0 + jr;
+                for (int p = 0; p < depth; p++, row += b.stride, pos += nr) {
+                    if (c != null) {
+                        for (int j = 0; j < width; j++) packedB[pos + j] = bd[row + j];
+                        for (int j = width; j < nr; j++) packedB[pos + j] = 0;
+                    }
+                    else {
+                        for (int j = 0; j < width; j++) widePackedB[pos + j] = bd[row + j];
+                        for (int j = width; j < nr; j++) widePackedB[pos + j] = 0;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Random;
+
+/**
+ * The micro-kernel of FloatGemm, as GemmKernel is for TiledGemm, but on floats: MR rows of C times nr() columns,
+ * summed in registers over the depth of a block. If the Vector API is there, INSTANCE is a VectorFloatKernel
+ * (in src-vector), whose vectors hold twice as many floats as doubles, so nr() is twice the nr() of the
+ * VectorGemmKernel. It is loaded and checked like the VectorGemmKernel, and -Dmatrix.vector=false turns it off too.
+ */
+class FloatKernel {
+    static final int MR = GemmKernel.MR;
+
+    /**
+     * Two ways of summing k products of floats may differ by about k * ulp(1f) * sum |a * b|, the factor per product.
+     */
+    static final double TOLERANCE = 4 * Math.ulp(1.0f);
+
+    static final FloatKernel INSTANCE = load();
+
+
+    /**
+     * @return number of columns of C computed by the micro-kernel, which is the width of the packed slivers of B
+     */
+    int nr() {
+        return 4;
+    }
+
+
+    /**
+     * Adds a sliver of packed A (MR rows) times a sliver of packed B (nr() columns) to C,
+     * see GemmKernel.multiplyAdd(..) for the parameters.
+     */
+    void multiplyAdd(int depth, float[] pa, int ai, float[] pb, int bi,
+                     float[] c, int cIndex, int ldc, int height, int width, float[] edge) {
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        float a0, a1, a2, a3, b0, b1, b2, b3;
+
+        for (int p = 0; p < depth; p++, ai += MR, bi += 4) {
+            a0 = pa[ai]; a1 = pa[ai + 1]; a2 = pa[ai + 2]; a3 = pa[ai + 3];
+            b0 = pb[bi]; b1 = pb[bi + 1]; b2 = pb[bi + 2]; b3 = pb[bi + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+
+        if (height == MR && width == 4) {
+            c[cIndex] += c00;           c[cIndex + 1] += c01;           c[cIndex + 2] += c02;           c[cIndex + 3] += c03;
+            c[cIndex + ldc] += c10;     c[cIndex + ldc + 1] += c11;     c[cIndex + ldc + 2] += c12;     c[cIndex + ldc + 3] += c13;
+            c[cIndex + 2 * ldc] += c20; c[cIndex + 2 * ldc + 1] += c21; c[cIndex + 2 * ldc + 2] += c22; c[cIndex + 2 * ldc + 3] += c23;
+            c[cIndex + 3 * ldc] += c30; c[cIndex + 3 * ldc + 1] += c31; c[cIndex + 3 * ldc + 2] += c32; c[cIndex + 3 * ldc + 3] += c33;
+            return;
+        }
+        edge[0] = c00;  edge[1] = c01;  edge[2] = c02;  edge[3] = c03;
+        edge[4] = c10;  edge[5] = c11;  edge[6] = c12;  edge[7] = c13;
+        edge[8] = c20;  edge[9] = c21;  edge[10] = c22; edge[11] = c23;
+        edge[12] = c30; edge[13] = c31; edge[14] = c32; edge[15] = c33;
+        addEdge(edge, 4, c, cIndex, ldc, height, width);
+    }
+
+
+    /**
+     * Adds the first height x width sums of a piece, stored row by row in edge with rows nr apart, to C.
+     */
+    static void addEdge(float[] edge, int nr, float[] c, int cIndex, int ldc, int height, int width) {
+        for (int r = 0; r < height; r++) {
+            for (int j = 0; j < width; j++) c[cIndex + r * ldc + j] += edge[r * nr + j];
+        }
+    }
+
+
+    private static FloatKernel load() {
+        FloatKernel scalar = new FloatKernel();
+        if (!Boolean.parseBoolean(System.getProperty("matrix.vector", "true"))) return scalar;
+        try {
+            FloatKernel vector = (FloatKernel) Class.forName("VectorFloatKernel").getDeclaredConstructor().newInstance();
+            return agrees(vector) ? vector : scalar;
+        }
+        catch (ReflectiveOperationException | LinkageError e) {     // not compiled, or jdk.incubator.vector is not added
+            return scalar;
+        }
+    }
+
+
+    /**
+     * Checks a kernel against sums in double on random data, with whole and partial pieces.
+     */
+    static boolean agrees(FloatKernel kernel) {
+        Random random = new Random(1);
+        int depth = 37, nr = kernel.nr();
+        float[] pa = new float[MR * depth], pb = new float[nr * depth];
+        for (int i = 0; i < pa.length; i++) pa[i] = random.nextFloat() - 0.5f;
+        for (int i = 0; i < pb.length; i++) pb[i] = random.nextFloat() - 0.5f;
+        double bound = depth * TOLERANCE * depth;
+
+        for (int width : new int[] {nr, Math.max(1, nr - 1)}) {
+            int height = (width == nr) ? MR : MR - 1;
+            float[] c = new float[MR * nr];
+            kernel.multiplyAdd(depth, pa, 0, pb, 0, c, 0, nr, height, width, new float[MR * nr]);
+            for (int r = 0; r < MR; r++) {
+                for (int j = 0; j < nr; j++) {
+                    double sum = 0;
+                    if (r < height && j < width) for (int p = 0; p < depth; p++) sum += (double) pa[p * MR + r] * pb[p * nr + j];
+                    if (Math.abs(c[r * nr + j] - sum) > bound) return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * A dense matrix of floats, laid out like Matrix: row by row in one float[], element (i, j) at
+ * data[offset + i * stride + j]. Half the bytes of a Matrix, so half the memory traffic, and twice the elements
+ * in a vector, at the price of about 7 significant digits instead of 16. See FloatGemm.
+ */
+public final class FloatMatrix {
+    final float[] data;
+    final int rows, cols;
+    final int offset;       // index in data of element (0, 0)
+    final int stride;       // distance in data from an element to the one below it
+
+
+    /**
+     * Makes a matrix of zeros.
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    public FloatMatrix(int rows, int cols) {
+        this(new float[Math.multiplyExact(rows, cols)], rows, cols, 0, cols);
+    }
+
+
+    FloatMatrix(float[] data, int rows, int cols, int offset, int stride) {
+        if (rows < 0 || cols < 0 || stride < cols)
+            throw new IllegalArgumentException(String.format("Illegal matrix %d x %d with stride %d", rows, cols, stride));
+        if (rows > 0 && cols > 0 && (offset < 0 || offset + (long) (rows - 1) * stride + cols > data.length))
+            throw new IllegalArgumentException("The matrix does not fit in its data");
+        this.data = data;
+        this.rows = rows;
+        this.cols = cols;
+        this.offset = offset;
+        this.stride = stride;
+    }
+
+
+    /**
+     * @param m a matrix of doubles
+     * @return a new matrix with the elements of m rounded to the nearest float
+     */
+    public static FloatMatrix of(Matrix m) {
+        FloatMatrix f = new FloatMatrix(m.rows, m.cols);
+        for (int i = 0; i < m.rows; i++) {
+            int row = m.offset + i * m.stride;
+            for (int j = 0; j < m.cols; j++) f.data[i * m.cols + j] = (float) m.data[row + j];
+        }
+        return f;
+    }
+
+
+    /**
+     * @return a new matrix of doubles with the same elements
+     */
+    public Matrix toMatrix() {
+        Matrix m = new Matrix(rows, cols);
+        copyTo(m, false);
+        return m;
+    }
+
+
+    /**
+     * Writes the elements of this matrix to m, or adds them to it.
+     * @param m a matrix of doubles of the same size
+     * @param add true to add to the elements of m, false to overwrite them
+     */
+    void copyTo(Matrix m, boolean add) {
+        if (m.rows != rows || m.cols != cols)
+            throw new IllegalArgumentException(String.format("Can't copy %d x %d to %d x %d", rows, cols, m.rows, m.cols));
+        for (int i = 0; i < rows; i++) {
+            int from = offset + i * stride, to = m.offset + i * m.stride;
+            if (add) for (int j = 0; j < cols; j++) m.data[to + j] += data[from + j];
+            else for (int j = 0; j < cols; j++) m.data[to + j] = data[from + j];
+        }
+    }
+
+
+    public int rows() { return rows; }
+
+    public int cols() { return cols; }
+
+
+    public float get(int i, int j) {
+        return data[index(i, j)];
+    }
+
+
+    public void set(int i, int j, float value) {
+        data[index(i, j)] = value;
+    }
+
+
+    private int index(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= cols)
+            throw new IndexOutOfBoundsException(String.format("(%d, %d) is outside the %d x %d matrix", i, j, rows, cols));
+        return offset + i * stride + j;
+    }
+
+
+    /**
+     * @return the sub-matrix, which shares its elements with this matrix, see Matrix.view(..)
+     */
+    public FloatMatrix view(int row, int col, int rows, int cols) {
+        if (row < 0 || col < 0 || rows < 0 || cols < 0 || row + rows > this.rows || col + cols > this.cols)
+            throw new IndexOutOfBoundsException(String.format("A %d x %d view at (%d, %d) does not fit in the %d x %d matrix",
+                    rows, cols, row, col, this.rows, this.cols));
+        return new FloatMatrix(data, rows, cols, offset + row * stride + col, stride);
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matrix products of any shape, C = A * B with A m x k and B k x n, one at a time or many independent ones
+ * at once (a batch).
+ *
+ * A large product is shared out between the threads by TiledGemm. A small one is computed on the calling thread,
+ * since handing it to the pool costs more than it saves. A batch is shared out the other way around: the threads
+ * take whole products from the batch, one after another, and compute each of them alone, so there is one hand-off
+ * per thread for the whole batch instead of one per product, and the threads reuse their packing buffers.
+ *
+ * Many products with the same B can skip packing it: pack(..) packs it once, or multiplyCached(..) keeps it packed
+ * in a cache of CACHE_BYTES, found again by identity as long as B has not changed (see PackCache).
+ */
+public final class Gemm {
+    static final long PARALLEL_MIN = 1L << 21;      // products with fewer multiply-adds run on the calling thread
+
+    public static final long CACHE_BYTES = 256L << 20;
+
+    private static final TiledGemm TILED = new TiledGemm();
+    private static final PackCache CACHE = new PackCache(TILED, CACHE_BYTES);
+
+    private Gemm() {}
+
+
+    /**
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @return a * b, a new m x n matrix
+     */
+    public static Matrix multiply(Matrix a, Matrix b) {
+        Matrix c = new Matrix(a.rows, b.cols);
+        multiply(a, b, c);
+        return c;
+    }
+
+
+    /**
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public static void multiply(Matrix a, Matrix b, Matrix c) {
+        if (work(a, b) < PARALLEL_MIN || WorkerPool.getParallelism() == 1) TILED.multiplySequential(a, b, c);
+        else TILED.multiply(a, b, c);
+    }
+
+
+    /**
+     * Computes c = op(a) * op(b), where op(x) is x transposed or not, without copying a transposed operand.
+     * @param a m x k matrix, or k x m if transposeA
+     * @param transposeA true to use a transposed
+     * @param b k x n matrix, or n x k if transposeB
+     * @param transposeB true to use b transposed
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public static void multiply(Matrix a, boolean transposeA, Matrix b, boolean transposeB, Matrix c) {
+        long work = (long) a.rows * a.cols * (transposeB ? b.rows : b.cols);
+        if (work < PARALLEL_MIN || WorkerPool.getParallelism() == 1)
+            TILED.multiplySequential(a, transposeA, b, transposeB, c);
+        else TILED.multiply(a, transposeA, b, transposeB, c);
+    }
+
+
+    /**
+     * Computes y = op(a) * x, by rows of op(a) in parallel. Each row is a dot product with x when a is not
+     * transposed; when it is, the rows of a are added to y, each times its element of x, so a is still read
+     * along its rows. Then the threads take bands of the columns of a.
+     * @param a m x k matrix, or k x m if transposeA
+     * @param transposeA true to use a transposed
+     * @param x vector of length k
+     * @param y vector of length m, receives the product. It must not be x.
+     */
+    public static void multiply(Matrix a, boolean transposeA, double[] x, double[] y) {
+        int m = transposeA ? a.cols : a.rows, k = transposeA ? a.rows : a.cols;
+        if (x.length != k || y.length != m)
+            throw new IllegalArgumentException(String.format("Can't multiply %d x %d%s by a vector of %d into one of %d",
+                    a.rows, a.cols, transposeA ? " transposed" : "", x.length, y.length));
+        int threads = (int) Math.min(WorkerPool.getParallelism(), Math.max(1, (long) m * k / PARALLEL_MIN));
+        threads = Math.max(1, Math.min(threads, m));
+        Runnable[] bands = new Runnable[threads];
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) m * t / threads), to = (int) ((long) m * (t + 1) / threads);
+            bands[t] = transposeA ? () -> columnBand(a, x, y, from, to) : () -> rowBand(a, x, y, from, to);
+        }
+        if (threads == 1) bands[0].run();
+        else WorkerPool.invokeAll(bands);
+    }
+
+
+    /**
+     * y[i] = row i of a times x, for i in [from, to)
+     */
+    private static void rowBand(Matrix a, double[] x, double[] y, int from, int to) {
+        GemmKernel kernel = GemmKernel.INSTANCE;
+        for (int i = from; i < to; i++) y[i] = kernel.dot(a.data, a.offset + i * a.stride, x, 0, a.cols);
+    }
+
+
+    /**
+     * y[j] = column j of a times x, for j in [from, to), summed row by row of a
+     */
+    private static void columnBand(Matrix a, double[] x, double[] y, int from, int to) {
+        Arrays.fill(y, from, to, 0);
+        for (int p = 0; p < a.rows; p++) {
+            double xp = x[p];
+            int row = a.offset + p * a.stride;
+            for (int j = from; j < to; j++) y[j] += xp * a.data[row + j];
+        }
+    }
+
+
+    /**
+     * Computes c += a * b.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, the product is added to it. It must not share elements with a or b.
+     */
+    public static void multiplyAdd(Matrix a, Matrix b, Matrix c) {
+        if (work(a, b) < PARALLEL_MIN || WorkerPool.getParallelism() == 1) TILED.multiplyAddSequential(a, b, c);
+        else TILED.multiplyAdd(a, b, c);
+    }
+
+
+    /**
+     * @param a m x k matrix
+     * @param b k x n matrix, packed with pack(..)
+     * @param c m x n matrix, receives the product. It must not share elements with a.
+     */
+    public static void multiply(Matrix a, PackedMatrix b, Matrix c) {
+        if (work(a, b.source) < PARALLEL_MIN || WorkerPool.getParallelism() == 1) TILED.multiplySequential(a, b, c);
+        else TILED.multiply(a, b, c);
+    }
+
+
+    /**
+     * Computes c = a * b, with b packed from the cache, which packs it the first time and after it has changed.
+     * After changing b, with set(..), through its data or through a view, call b.markChanged(), or the old packed
+     * copy is used.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public static void multiplyCached(Matrix a, Matrix b, Matrix c) {
+        TiledGemm.checkShapes(a, b, c);
+        multiply(a, CACHE.get(b), c);
+    }
+
+
+    /**
+     * @param b k x n matrix
+     * @return b packed for multiply(Matrix, PackedMatrix, Matrix). A copy, which does not follow changes to b.
+     */
+    public static PackedMatrix pack(Matrix b) {
+        return TILED.pack(b);
+    }
+
+
+    /**
+     * Empties the cache of packed matrices used by multiplyCached(..).
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+
+    /**
+     * @param a the left matrices
+     * @param b the right matrices, as many as in a
+     * @return a[i] * b[i] for every i, new matrices
+     */
+    public static Matrix[] multiplyAll(Matrix[] a, Matrix[] b) {
+        if (a.length != b.length) throw new IllegalArgumentException(a.length + " left and " + b.length + " right matrices");
+        Matrix[] c = new Matrix[a.length];
+        for (int i = 0; i < c.length; i++) c[i] = new Matrix(a[i].rows, b[i].cols);
+        multiplyAll(a, b, c);
+        return c;
+    }
+
+
+    /**
+     * Computes c[i] = a[i] * b[i] for every i, in parallel across the batch. Each product is computed by one thread,
+     * so a batch of a few large products is better done with multiply(..) one at a time.
+     * @param a the left matrices
+     * @param b the right matrices
+     * @param c receive the products. None of them may share elements with a matrix of a or b.
+     */
+    public static void multiplyAll(Matrix[] a, Matrix[] b, Matrix[] c) {
+        if (a.length != b.length || a.length != c.length)
+            throw new IllegalArgumentException(String.format("A batch of %d, %d and %d matrices", a.length, b.length, c.length));
+        long work = 0;
+        for (int i = 0; i < a.length; i++) {
+            TiledGemm.checkShapes(a[i], b[i], c[i]);
+            work += work(a[i], b[i]);
+        }
+
+        int threads = (int) Math.min(WorkerPool.getParallelism(), Math.min(a.length, Math.max(1, work / PARALLEL_MIN)));
+        if (threads <= 1) {
+            for (int i = 0; i < a.length; i++) TILED.multiplySequential(a[i], b[i], c[i]);
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        Runnable[] workers = new Runnable[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = () -> {
+                int i;
+                while ((i = next.getAndIncrement()) < a.length) TILED.multiplySequential(a[i], b[i], c[i]);
+            };
+        }
+        WorkerPool.invokeAll(workers);
+    }
+
+
+    /**
+     * @return number of multiply-adds in a * b
+     */
+    private static long work(Matrix a, Matrix b) {
+        return (long) a.rows * a.cols * b.cols;
+    }
+
+}
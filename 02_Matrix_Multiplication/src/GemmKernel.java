@@ -0,0 +1,149 @@
+import java.util.Random;
+
+/**
+ * The innermost loops of the multiplication: the dot product of runTransposedB and the micro-kernel of TiledGemm.
+ *
+ * This plain version computes one product at a time and leaves vectorization to the JIT, which it does not do
+ * for sums (a reduction). If the Vector API is there, INSTANCE is a VectorGemmKernel (in src-vector), which uses
+ * fused multiply-adds on whole vectors of the widest species the CPU has. The Vector API is an incubator module,
+ * so it has to be asked for at compile and run time:
+ *
+ *      javac -d out src/*.java
+ *      javac --add-modules jdk.incubator.vector -cp out -d out src-vector/*.java
+ *      java --add-modules jdk.incubator.vector -cp out Main
+ *
+ * Without the module (or without the compiled class), or with -Dmatrix.vector=false, the plain version is used.
+ * The vector kernel is only used if it passes a check against this one when it is loaded: a fused multiply-add
+ * rounds once instead of twice, and sums in another order, so the results are not bit for bit the same, but they
+ * must agree to within the rounding error of a dot product (see TOLERANCE).
+ */
+class GemmKernel {
+    static final int MR = 4;                        // rows of C computed by the micro-kernel
+
+    /**
+     * Two ways of summing k products may differ by about k * ulp(1) * sum |a * b|, this is that factor per product.
+     */
+    static final double TOLERANCE = 4 * Math.ulp(1.0);
+
+    static final GemmKernel INSTANCE = load();
+
+
+    /**
+     * @return number of columns of C computed by the micro-kernel, which is the width of the packed slivers of B
+     */
+    int nr() {
+        return 4;
+    }
+
+
+    /**
+     * @return x[xi] * y[yi] + ... + x[xi + length - 1] * y[yi + length - 1]
+     */
+    double dot(double[] x, int xi, double[] y, int yi, int length) {
+        double sum = 0;
+        for (int k = 0; k < length; k++) sum += x[xi + k] * y[yi + k];
+        return sum;
+    }
+
+
+    /**
+     * The micro-kernel: adds a sliver of packed A (MR rows) times a sliver of packed B (nr() columns) to C.
+     * @param depth length of the slivers
+     * @param pa packed A, for every p the MR elements of column p
+     * @param ai start of the sliver in pa
+     * @param pb packed B, for every p the nr() elements of row p
+     * @param bi start of the sliver in pb
+     * @param c data of C
+     * @param cIndex index in c of the top left element to add to
+     * @param ldc distance in c from an element to the one below it
+     * @param height number of rows to write, the rest are zero padding
+     * @param width number of columns to write, the rest are zero padding
+     * @param edge scratch space of MR * nr() doubles, for the pieces that are not whole
+     */
+    void multiplyAdd(int depth, double[] pa, int ai, double[] pb, int bi,
+                     double[] c, int cIndex, int ldc, int height, int width, double[] edge) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        double a0, a1, a2, a3, b0, b1, b2, b3;
+
+        for (int p = 0; p < depth; p++, ai += MR, bi += 4) {
+            a0 = pa[ai]; a1 = pa[ai + 1]; a2 = pa[ai + 2]; a3 = pa[ai + 3];
+            b0 = pb[bi]; b1 = pb[bi + 1]; b2 = pb[bi + 2]; b3 = pb[bi + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+
+        if (height == MR && width == 4) {
+            c[cIndex] += c00;           c[cIndex + 1] += c01;           c[cIndex + 2] += c02;           c[cIndex + 3] += c03;
+            c[cIndex + ldc] += c10;     c[cIndex + ldc + 1] += c11;     c[cIndex + ldc + 2] += c12;     c[cIndex + ldc + 3] += c13;
+            c[cIndex + 2 * ldc] += c20; c[cIndex + 2 * ldc + 1] += c21; c[cIndex + 2 * ldc + 2] += c22; c[cIndex + 2 * ldc + 3] += c23;
+            c[cIndex + 3 * ldc] += c30; c[cIndex + 3 * ldc + 1] += c31; c[cIndex + 3 * ldc + 2] += c32; c[cIndex + 3 * ldc + 3] += c33;
+            return;
+        }
+        edge[0] = c00;  edge[1] = c01;  edge[2] = c02;  edge[3] = c03;
+        edge[4] = c10;  edge[5] = c11;  edge[6] = c12;  edge[7] = c13;
+        edge[8] = c20;  edge[9] = c21;  edge[10] = c22; edge[11] = c23;
+        edge[12] = c30; edge[13] = c31; edge[14] = c32; edge[15] = c33;
+        addEdge(edge, 4, c, cIndex, ldc, height, width);
+    }
+
+
+    /**
+     * Adds the first height x width sums of a piece, stored row by row in edge with rows nr apart, to C.
+     */
+    static void addEdge(double[] edge, int nr, double[] c, int cIndex, int ldc, int height, int width) {
+        for (int r = 0; r < height; r++) {
+            for (int j = 0; j < width; j++) c[cIndex + r * ldc + j] += edge[r * nr + j];
+        }
+    }
+
+
+    private static GemmKernel load() {
+        GemmKernel scalar = new GemmKernel();
+        if (!Boolean.parseBoolean(System.getProperty("matrix.vector", "true"))) return scalar;
+        try {
+            GemmKernel vector = (GemmKernel) Class.forName("VectorGemmKernel").getDeclaredConstructor().newInstance();
+            return agrees(vector, scalar) ? vector : scalar;
+        }
+        catch (ReflectiveOperationException | LinkageError e) {     // not compiled, or jdk.incubator.vector is not added
+            return scalar;
+        }
+    }
+
+
+    /**
+     * Checks that a kernel computes the same as the plain kernel, to within the rounding error, on random data
+     * with whole and partial pieces.
+     */
+    static boolean agrees(GemmKernel kernel, GemmKernel reference) {
+        Random random = new Random(1);
+        int depth = 37, nr = kernel.nr();
+        double[] pa = new double[MR * depth], pb = new double[nr * depth];
+        for (int i = 0; i < pa.length; i++) pa[i] = random.nextDouble() - 0.5;
+        for (int i = 0; i < pb.length; i++) pb[i] = random.nextDouble() - 0.5;
+        double bound = depth * TOLERANCE * depth;       // |a * b| < 1 for every product
+
+        if (Math.abs(kernel.dot(pa, 1, pb, 2, depth) - reference.dot(pa, 1, pb, 2, depth)) > bound) return false;
+
+        for (int width : new int[] {nr, Math.max(1, nr - 1)}) {
+            int height = (width == nr) ? MR : MR - 1;
+            double[] c = new double[MR * nr], expected = new double[MR * nr];
+            kernel.multiplyAdd(depth, pa, 0, pb, 0, c, 0, nr, height, width, new double[MR * nr]);
+            for (int r = 0; r < height; r++) {
+                for (int j = 0; j < width; j++) {
+                    double sum = 0;
+                    for (int p = 0; p < depth; p++) sum += pa[p * MR + r] * pb[p * nr + j];
+                    expected[r * nr + j] = sum;
+                }
+            }
+            for (int i = 0; i < c.length; i++) {
+                if (Math.abs(c[i] - expected[i]) > bound) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,10 +1,15 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 public class Main {
     private static double[][] times;
+    private static final List<Profile> profiles = new ArrayList<>();
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         int[] matrixSizes = {100, 200, 500, 1000};
 
         double[][] speedups = getSpeedups(matrixSizes);
@@ -12,6 +17,10 @@ public class Main {
         int nrOfAlg = 6;
         double[][] comparison = compareToFastest(matrixSizes.length, nrOfAlg);
         printComparison(comparison, matrixSizes);
+
+        Profile.writeCsv(Paths.get("profile.csv"), profiles);
+        Profile.writeJson(Paths.get("profile.json"), profiles);
+        System.out.printf("%nThe profiles are written to profile.csv and profile.json%n");
     }
 
 
@@ -70,7 +79,7 @@ public class Main {
         int seed = 42;
         int nrOfAlg = 6;
         Workers workers;
-        double[][] a, b;
+        Matrix a, b;
         double[][] speedups = new double[matrixSizes.length][nrOfAlg/2];
         times = new double[matrixSizes.length][nrOfAlg];
         double[] medianTimes;
@@ -79,8 +88,16 @@ public class Main {
             a = Oblig2Precode.generateMatrixA(seed, matrixSizes[i]);
             b = Oblig2Precode.generateMatrixB(seed, matrixSizes[i]);
             workers = new Workers(a, b);
-
-            medianTimes = getMedianTimes(a, b, workers);   // updates global medianTimes variable
+            Matrix expected = new Matrix(matrixSizes[i], matrixSizes[i]);
+            multiplyWithoutRotation(a, b, expected);
+            if (!checkResultCorrection(expected, workers))
+                System.out.printf("The parallel results for %d x %d differ from the sequential one!%n", matrixSizes[i], matrixSizes[i]);
+            double strassenError = maxDifference(workers.runWorker(5), expected);
+            double largest = maxAbs(expected);
+            System.out.printf("Strassen-Winograd for %d x %d differs from the classic result by at most %.3e (%.3e relative)%n",
+                    matrixSizes[i], matrixSizes[i], strassenError, strassenError / largest);
+
+            medianTimes = getMedianTimes(a, b, workers, expected);   // updates global medianTimes variable
             times[i] = medianTimes;
             speedups[i] = speedup(medianTimes);
         }
@@ -89,37 +106,72 @@ public class Main {
     }
 
 
-    private static double[] getMedianTimes(double[][] a, double[][] b, Workers workers){
+    /**
+     * Times every algorithm, and prints for each its median time, its throughput in GFLOP/s (2 n^3 floating point
+     * operations per product) and its largest difference from the classic result in double, which shows what the
+     * single (float) and mixed precision modes give up. Then profiles one more run of each (see Profile), for the
+     * bytes moved, the memory bandwidth and the busy, idle and waiting time of the threads.
+     * @param expected the result of the sequential classic algorithm
+     * @return the median times of the 6 algorithms in double, for the speedups
+     */
+    private static double[] getMedianTimes(Matrix a, Matrix b, Workers workers, Matrix expected){
         int repeat = 7;
-        int nrOfAlg = 6;
+        int nrOfAlg = 8;
+        String[] names = {"Classic", "A-transposed", "B-Transposed", "Classic      Parallel", "A-Transposed Parallel",
+                "B-Transposed Parallel", "Float        Parallel", "Mixed        Parallel"};
         double[][] times = new double[nrOfAlg][repeat];
-        // order: [timeClassic, timeRotateA, timeRotateB, timeClassicPar, timeRotateAPar, timeRotateBPar]
+        // order: [timeClassic, timeRotateA, timeRotateB, timeClassicPar, timeRotateAPar, timeRotateBPar, timeFloatPar, timeMixedPar]
         double[] medianTimes = new double[nrOfAlg];
+        double[] errors = new double[nrOfAlg];
+        Matrix c = new Matrix(a.rows(), b.cols());
 
         for (int i = 0; i < nrOfAlg; i++){
             for (int j = 0; j < repeat; j++) {
-                times[i][j] = timeAlgorithm(i, a, b, workers);
+                times[i][j] = timeAlgorithm(i, a, b, workers, c);
             }
+            errors[i] = maxDifference(c, expected);
         }
         for (int i = 0; i < nrOfAlg; i++){
             medianTimes[i] = getMedian(times[i]);
         }
-        return medianTimes;
+
+        double flops = 2.0 * a.rows() * a.cols() * b.cols();
+        System.out.printf("%nThroughput for Matrix: %d x %d:%n", a.rows(), b.cols());
+        for (int i = 0; i < nrOfAlg; i++){
+            System.out.printf("\t%-21s:\t%10.3f ms\t%8.3f GFLOP/s\tmax error %.3e%n",
+                    names[i], medianTimes[i], flops / (medianTimes[i] * 1e6), errors[i]);
+        }
+
+        int[] workerChoices = {0, 1, 2, 0, 1, 2, 6, 7};   // the choice of Workers each algorithm moves the bytes of
+        System.out.printf("%nProfile for Matrix: %d x %d:%n", a.rows(), b.cols());
+        for (int i = 0; i < nrOfAlg; i++){
+            int choice = i;
+            String name = names[i].trim().replaceAll(" +", " ");
+            long bytes = workers.bytesMoved(workerChoices[i]);
+            Runnable run = () -> timeAlgorithm(choice, a, b, workers, c);
+            Profile profile = (i < 3)     // the first three are sequential, on this thread alone
+                    ? Profile.measureSequential(name, a.rows(), a.cols(), b.cols(), bytes, run)
+                    : Profile.measure(name, a.rows(), a.cols(), b.cols(), bytes, run);
+            profiles.add(profile);
+            System.out.printf("\t%s%n", profile);
+        }
+        return Arrays.copyOf(medianTimes, 6);
     }
 
 
-    private static double timeAlgorithm(int choice, double[][] a, double[][] b, Workers workers){
+    private static double timeAlgorithm(int choice, Matrix a, Matrix b, Workers workers, Matrix c){
         double start, end;
-        double[][] c = new double[a.length][a.length];
 
         start = System.nanoTime();
         switch (choice){
             case 0: multiplyWithoutRotation(a, b, c); break;
             case 1: multiplyByRotatingA(a, b, c);     break;
             case 2: multiplyByRotatingB(a, b, c);     break;
-            case 3: workers.runWorker(0);      break;   // Classic parallel
-            case 4: workers.runWorker(1);      break;   // A Transposed parallel
-            default: workers.runWorker(2);     break;   // B Transposed parallel
+            case 3: workers.runWorker(0, c, false);    break;   // Classic parallel
+            case 4: workers.runWorker(1, c, false);    break;   // A Transposed parallel
+            case 5: workers.runWorker(2, c, false);    break;   // B Transposed parallel
+            case 6: workers.runWorker(6, c, false);    break;   // Tiled parallel in float
+            default: workers.runWorker(7, c, false);   break;   // Tiled parallel, float operands summed in double
         }
         end = System.nanoTime();
         return  (end - start) / 1000000; // milli
@@ -159,46 +211,26 @@ public class Main {
 
 
     /**
-     * This is what multiplyByRotatingA & multiplyByRotatingB functions use to rotate the A & B matrix.
-     * Flip rotate the matrix, where lower left corner is flipped with upper right.
-     * In other words, every value is swapped unless the values in (upper lef to lower right) diagonal.
-     * Assumes all rows have same length.
-     * @param matrix 2d array
-     * @return rotated matrix
-     */
-    private static double[][] transpose(double[][] matrix){
-        int size = matrix.length;
-        double[][] rotatedMatrix = new double[size][size];
-
-        for (int i = 0; i < size; i++){
-            for (int j = 0; j < size; j++){
-                rotatedMatrix[i][j] = matrix[j][i];
-            }
-        }
-        return rotatedMatrix;
-    }
-
-
-
-    /**
-     * Rotates B and multiplies a and b.
+     * Rotates A and multiplies a and b.
      * For simplicity this function assumes a and b have the same length (nr of rows).
      * @param a first matrix
      * @param b second matrix
+     * @param c receives the product
      */
-    private static void multiplyByRotatingA(double[][] a, double[][] b, double[][] c){
-        int size = a.length;
-        double[][] _a = transpose(a);
+    private static void multiplyByRotatingA(Matrix a, Matrix b, Matrix c){
+        int size = a.rows;
+        Matrix _a = a.transpose();
+        double[] ad = _a.data, bd = b.data, cd = c.data;
         double sum;
 
-        // multiply each row of a, with all rows in rotated b
+        // multiply each column of rotated a, with all columns of b
         for (int i = 0; i < size; i++){
             for (int j = 0;j < size; j++) {
                 sum = 0;
                 for (int k = 0; k < size; k++){
-                    sum += _a[k][i] * b[k][j];
+                    sum += ad[k * size + i] * bd[b.offset + k * b.stride + j];
                 }
-                c[i][j] = sum;
+                cd[c.offset + i * c.stride + j] = sum;
             }
         }
     }
@@ -209,20 +241,24 @@ public class Main {
      * For simplicity this function assumes a and b have the same length (nr of rows).
      * @param a first matrix
      * @param b second matrix
+     * @param c receives the product
      */
-    private static void multiplyByRotatingB(double[][] a, double[][] b, double[][] c){
-        int size = a.length;
-        double[][] _b = transpose(b);
+    private static void multiplyByRotatingB(Matrix a, Matrix b, Matrix c){
+        int size = a.rows;
+        Matrix _b = b.transpose();
+        double[] ad = a.data, bd = _b.data, cd = c.data;
+        int aRow;
         double sum;
 
         // multiply each row of a, with all rows in rotated b
         for (int i = 0; i < size; i++){
+            aRow = a.offset + i * a.stride;
             for (int j = 0;j < size; j++) {
                 sum = 0;
                 for (int k = 0; k < size; k++){
-                    sum += a[i][k] * _b[j][k];
+                    sum += ad[aRow + k] * bd[j * size + k];
                 }
-                c[i][j] = sum;
+                cd[c.offset + i * c.stride + j] = sum;
             }
         }
     }
@@ -231,25 +267,73 @@ public class Main {
     /** For simplicity this function assumes a and b have the same length (nr of rows).
      * @param a first matrix
      * @param b second matrix
+     * @param c receives the product
      */
-    private static void multiplyWithoutRotation(double[][] a, double[][] b, double[][] c){
-        int size = a.length;
+    private static void multiplyWithoutRotation(Matrix a, Matrix b, Matrix c){
+        int size = a.rows;
+        double[] ad = a.data, bd = b.data, cd = c.data;
+        int aRow;
         double sum;
-        // multiply each row of a, with all rows in rotated b
+        // multiply each row of a, with all columns of b
         for (int i = 0; i < size; i++){
+            aRow = a.offset + i * a.stride;
             for (int j = 0;j < size; j++) {
                 sum = 0;
                 for (int k = 0; k < size; k++){
-                    sum += a[i][k] * b[k][j];
+                    sum += ad[aRow + k] * bd[b.offset + k * b.stride + j];
                 }
-                c[i][j] = sum;
+                cd[c.offset + i * c.stride + j] = sum;
             }
         }
     }
 
 
-    private static boolean checkResultCorrection(){
-        return false;
+    /**
+     * Checks the results of all parallel algorithms against the sequential classic one. They are not bit for bit
+     * the same, since the vector kernels use fused multiply-adds and sum in another order, but they must not differ
+     * by more than the rounding error of a dot product of n elements.
+     * Assumes the elements of a and b are in [0, 1), as the generated ones are.
+     * Strassen-Winograd (choice 5) is left out, its error is larger, and reported on its own.
+     * @param expected the result of the sequential classic algorithm
+     * @return true if all results are correct
+     */
+    private static boolean checkResultCorrection(Matrix expected, Workers workers){
+        int n = expected.rows;
+        double tolerance = n * GemmKernel.TOLERANCE * n;     // |a * b| < 1, so the sum of n of them is < n
+
+        for (int choice = 0; choice <= 4; choice++){
+            if (maxDifference(workers.runWorker(choice), expected) > tolerance) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * @return the largest absolute value of an element of x
+     */
+    private static double maxAbs(Matrix x){
+        double max = 0;
+        for (int i = 0; i < x.rows; i++){
+            int row = x.offset + i * x.stride;
+            for (int j = 0; j < x.cols; j++){
+                max = Math.max(max, Math.abs(x.data[row + j]));
+            }
+        }
+        return max;
+    }
+
+
+    /**
+     * @return the largest absolute difference between two elements in the same place of x and y
+     */
+    private static double maxDifference(Matrix x, Matrix y){
+        double max = 0;
+        for (int i = 0; i < x.rows; i++){
+            for (int j = 0; j < x.cols; j++){
+                max = Math.max(max, Math.abs(x.get(i, j) - y.get(i, j)));
+            }
+        }
+        return max;
     }
 
 //    /** Left rotate the matrix. Assumes all rows have same length.
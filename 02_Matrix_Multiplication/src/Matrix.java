@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+/**
+ * A dense matrix of doubles stored row by row in one double[], instead of a double[][] with one object per row.
+ * The rows lie next to each other in memory, so walking along a row, or from one row to the next, reads memory
+ * in order, and an element is found with one multiplication and one array access: data[offset + i * stride + j].
+ *
+ * A view (see view(..)) is a sub-matrix sharing the data of the matrix it was made from. Its rows are still
+ * 'stride' apart in data, so the kernels must always go through offset and stride, and never assume stride == cols.
+ */
+public final class Matrix {
+    final double[] data;
+    final int rows, cols;
+    final int offset;       // index in data of element (0, 0)
+    final int stride;       // distance in data from an element to the one below it
+    private volatile int version;   // counts the calls of markChanged(), see PackCache. Volatile, as a cache may
+                                    // check it on other threads than the one which changed the matrix
+
+
+    /**
+     * Makes a matrix of zeros.
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    public Matrix(int rows, int cols) {
+        this(new double[Math.multiplyExact(rows, cols)], rows, cols, 0, cols);
+    }
+
+
+    Matrix(double[] data, int rows, int cols, int offset, int stride) {
+        if (rows < 0 || cols < 0 || stride < cols)
+            throw new IllegalArgumentException(String.format("Illegal matrix %d x %d with stride %d", rows, cols, stride));
+        if (rows > 0 && cols > 0 && (offset < 0 || offset + (long) (rows - 1) * stride + cols > data.length))
+            throw new IllegalArgumentException("The matrix does not fit in its data");
+        this.data = data;
+        this.rows = rows;
+        this.cols = cols;
+        this.offset = offset;
+        this.stride = stride;
+    }
+
+
+    /**
+     * @param data the elements, row by row. Used as it is, not copied.
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    public static Matrix wrap(double[] data, int rows, int cols) {
+        if ((long) rows * cols != data.length)
+            throw new IllegalArgumentException(data.length + " elements can't be a " + rows + " x " + cols + " matrix");
+        return new Matrix(data, rows, cols, 0, cols);
+    }
+
+
+    /**
+     * @param m a matrix as an array of rows of the same length
+     * @return a copy of m
+     */
+    public static Matrix of(double[][] m) {
+        int cols = (m.length == 0) ? 0 : m[0].length;
+        Matrix matrix = new Matrix(m.length, cols);
+        for (int i = 0; i < m.length; i++) {
+            if (m[i].length != cols) throw new IllegalArgumentException("Row " + i + " has " + m[i].length + " columns, not " + cols);
+            System.arraycopy(m[i], 0, matrix.data, i * cols, cols);
+        }
+        return matrix;
+    }
+
+
+    public int rows() { return rows; }
+
+    public int cols() { return cols; }
+
+
+    public double get(int i, int j) {
+        return data[index(i, j)];
+    }
+
+
+    public void set(int i, int j, double value) {
+        data[index(i, j)] = value;
+    }
+
+
+    /**
+     * Tells caches of this matrix (see PackCache) that its elements have changed. Every change, with set(..),
+     * through data, or through a view or another matrix sharing the same data, must be followed by this before
+     * the matrix is multiplied from a cache again. set(..) does not do it itself, so filling a matrix costs
+     * nothing more, and a cache reads the version of a matrix without racing with the threads setting it.
+     */
+    public void markChanged() {
+        version++;
+    }
+
+
+    int version() {
+        return version;
+    }
+
+
+    /**
+     * @return position of element (i, j) in data
+     */
+    int index(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= cols)
+            throw new IndexOutOfBoundsException(String.format("(%d, %d) is outside the %d x %d matrix", i, j, rows, cols));
+        return offset + i * stride + j;
+    }
+
+
+    /**
+     * @param row first row of the view
+     * @param col first column of the view
+     * @param rows number of rows in the view
+     * @param cols number of columns in the view
+     * @return the sub-matrix, which shares its elements with this matrix: changing one changes the other
+     */
+    public Matrix view(int row, int col, int rows, int cols) {
+        if (row < 0 || col < 0 || rows < 0 || cols < 0 || row + rows > this.rows || col + cols > this.cols)
+            throw new IndexOutOfBoundsException(String.format("A %d x %d view at (%d, %d) does not fit in the %d x %d matrix",
+                    rows, cols, row, col, this.rows, this.cols));
+        return new Matrix(data, rows, cols, offset + row * stride + col, stride);
+    }
+
+
+    /**
+     * @return true if the rows follow each other in data with no gaps, so the elements are data[offset, offset + rows * cols)
+     */
+    public boolean isCompact() {
+        return stride == cols || rows <= 1;
+    }
+
+
+    /**
+     * @return a compact copy of this matrix (or view)
+     */
+    public Matrix copy() {
+        Matrix copy = new Matrix(rows, cols);
+        for (int i = 0; i < rows; i++) System.arraycopy(data, offset + i * stride, copy.data, i * cols, cols);
+        return copy;
+    }
+
+
+    /**
+     * Transposes on the calling thread, block by block. See Transpose for the parallel and in-place versions.
+     * @return a new matrix, where element (i, j) is element (j, i) of this one
+     */
+    public Matrix transpose() {
+        Matrix t = new Matrix(cols, rows);
+        Transpose.transposeSequential(this, t);
+        return t;
+    }
+
+
+    /**
+     * Sets every element to zero.
+     */
+    public void clear() {
+        if (isCompact()) Arrays.fill(data, offset, offset + rows * cols, 0);
+        else for (int i = 0; i < rows; i++) Arrays.fill(data, offset + i * stride, offset + i * stride + cols, 0);
+    }
+
+
+    /**
+     * @return a copy of the matrix as an array of rows
+     */
+    public double[][] toArray() {
+        double[][] m = new double[rows][];
+        for (int i = 0; i < rows; i++) m[i] = Arrays.copyOfRange(data, offset + i * stride, offset + i * stride + cols);
+        return m;
+    }
+}
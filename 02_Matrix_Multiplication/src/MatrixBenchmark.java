@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks of the parallel matrix multiplication, for every n, number of threads and algorithm
+ * (choice 0: classic, 1: A transposed, 2: B transposed, 3: tiled, 4: recursive, 6: tiled in float,
+ * 7: tiled on float operands summed in double). The runs with one thread are the sequential baseline.
+ * The tiled benchmark tries out block sizes for the tiled algorithm, and the strassen benchmark
+ * crossover sizes for Strassen-Winograd, compared to the tiled algorithm (crossover = n). The batch benchmark
+ * multiplies many small m x k by k x n pairs, with Gemm.multiplyAll (batched = true) or one Gemm.multiply
+ * after another. The shared benchmark multiplies many A by the same B, packing B every time (packing = none),
+ * packing it once (packing = once) or finding it in the cache (packing = cached). The sparse benchmark
+ * multiplies an n x n matrix with the given fraction of nonzeros by a dense one (kind = dense, with
+ * TiledGemm), as CSR by the dense one (kind = csr), and as CSR by itself as CSR (kind = spgemm). The generate
+ * benchmark compares Precode.generateMatrixA, one java.util.Random filling the matrix in order, with
+ * RandomMatrix, a SplittableRandom stream per block of rows; the io benchmark writes and reads a MatrixFile.
+ * The chain benchmark computes A * B * C * x, for an n x n/10 A, n/10 x n B and n x n C, with MatrixExpr
+ * (plan = expr), as matrix products from the left then times x (plan = left), or as MatrixExpr without x
+ * (plan = matrix). The outofcore benchmark multiplies tiled files with OutOfCoreGemm, with a budget of the
+ * given MB of tiles in the heap. The transpose benchmark compares the blocked parallel transposition, into a
+ * new matrix or in place, with the element by element one.
+ *
+ * Run with: java -cp <classes> MatrixBenchmark [options], see Bench for the options. Bench is shared by the projects and
+ * compiled together with each of them. Example:
+ *      javac -d out ../bench/src/*.java src/*.java
+ *      java -cp out MatrixBenchmark -f 1 -p n=1000 -p threads=1,4,8 -p choice=2
+ */
+public class MatrixBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String cores = "" + Runtime.getRuntime().availableProcessors();
+
+        Bench.run(MatrixBenchmark.class, args, WorkerPool::setParallelism,
+                Bench.benchmark("multiply", MatrixBenchmark::multiply)
+                        .param("n", "100", "200", "500", "1000")
+                        .param("threads", "1", cores)
+                        .param("choice", "0", "1", "2", "3", "4", "6", "7"),
+
+                Bench.benchmark("tiled", MatrixBenchmark::tiled)
+                        .param("n", "1000", "2000")
+                        .param("threads", cores)
+                        .param("mc", "64", "128", "256")
+                        .param("kc", "128", "256", "512")
+                        .param("nc", "1024"),
+
+                Bench.benchmark("strassen", MatrixBenchmark::strassen)
+                        .param("n", "2048", "4096")
+                        .param("threads", cores)
+                        .param("crossover", "256", "512", "1024"),
+
+                Bench.benchmark("batch", MatrixBenchmark::batch)
+                        .param("count", "1000")
+                        .param("m", "16", "64")
+                        .param("k", "256")
+                        .param("n", "32")
+                        .param("threads", "1", cores)
+                        .param("batched", "true", "false"),
+
+                Bench.benchmark("shared", MatrixBenchmark::shared)
+                        .param("count", "100")
+                        .param("m", "32", "256")
+                        .param("n", "1024")
+                        .param("threads", "1", cores)
+                        .param("packing", "none", "once", "cached"),
+
+                Bench.benchmark("sparse", MatrixBenchmark::sparse)
+                        .param("n", "2000")
+                        .param("density", "0.001", "0.01", "0.05")
+                        .param("threads", "1", cores)
+                        .param("kind", "dense", "csr", "spgemm"),
+
+                Bench.benchmark("generate", MatrixBenchmark::generate)
+                        .param("n", "2000", "5000")
+                        .param("threads", "1", cores)
+                        .param("generator", "precode", "splittable"),
+
+                Bench.benchmark("io", MatrixBenchmark::io)
+                        .param("n", "2000", "5000")
+                        .param("threads", "1", cores)
+                        .param("operation", "write", "read"),
+
+                Bench.benchmark("chain", MatrixBenchmark::chain)
+                        .param("n", "1000", "2000")
+                        .param("threads", "1", cores)
+                        .param("plan", "left", "matrix", "expr"),
+
+                Bench.benchmark("outofcore", MatrixBenchmark::outOfCore)
+                        .param("n", "2000", "4000")
+                        .param("threads", cores)
+                        .param("tile", "256", "1024")
+                        .param("budget", "32", "256"),
+
+                Bench.benchmark("transpose", MatrixBenchmark::transpose)
+                        .param("n", "1000", "4000")
+                        .param("threads", "1", cores)
+                        .param("mode", "naive", "blocked", "inPlace"));
+    }
+
+
+    private static Bench.Invocation multiply(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        int choice = Integer.parseInt(params.get("choice"));
+        Workers workers = new Workers(Precode.generateMatrixA(42, n), Precode.generateMatrixB(42, n));
+        return () -> workers.runWorker(choice);
+    }
+
+
+    private static Bench.Invocation tiled(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        Workers workers = new Workers(Precode.generateMatrixA(42, n), Precode.generateMatrixB(42, n));
+        workers.setBlockSizes(Integer.parseInt(params.get("mc")), Integer.parseInt(params.get("kc")), Integer.parseInt(params.get("nc")));
+        return () -> workers.runWorker(3);
+    }
+
+
+    private static Bench.Invocation strassen(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        Workers workers = new Workers(Precode.generateMatrixA(42, n), Precode.generateMatrixB(42, n));
+        workers.setStrassenCrossover(Integer.parseInt(params.get("crossover")));
+        return () -> workers.runWorker(5);
+    }
+
+
+    private static Bench.Invocation batch(Map<String, String> params) {
+        int count = Integer.parseInt(params.get("count"));
+        int m = Integer.parseInt(params.get("m")), k = Integer.parseInt(params.get("k")), n = Integer.parseInt(params.get("n"));
+        boolean batched = Boolean.parseBoolean(params.get("batched"));
+        Random random = new Random(42);
+        Matrix[] a = new Matrix[count], b = new Matrix[count], c = new Matrix[count];
+        for (int i = 0; i < count; i++) {
+            a[i] = randomMatrix(random, m, k);
+            b[i] = randomMatrix(random, k, n);
+            c[i] = new Matrix(m, n);
+        }
+        return () -> {
+            if (batched) Gemm.multiplyAll(a, b, c);
+            else for (int i = 0; i < count; i++) Gemm.multiply(a[i], b[i], c[i]);
+            return c;
+        };
+    }
+
+
+    private static Bench.Invocation shared(Map<String, String> params) {
+        int count = Integer.parseInt(params.get("count"));
+        int m = Integer.parseInt(params.get("m")), n = Integer.parseInt(params.get("n"));
+        String packing = params.get("packing");
+        Random random = new Random(42);
+        Matrix[] a = new Matrix[count];
+        for (int i = 0; i < count; i++) a[i] = randomMatrix(random, m, n);
+        Matrix b = randomMatrix(random, n, n), c = new Matrix(m, n);
+        PackedMatrix packed = Gemm.pack(b);
+        return () -> {
+            for (Matrix ai : a) {
+                if (packing.equals("none")) Gemm.multiply(ai, b, c);
+                else if (packing.equals("once")) Gemm.multiply(ai, packed, c);
+                else Gemm.multiplyCached(ai, b, c);
+            }
+            return c;
+        };
+    }
+
+
+    private static Bench.Invocation sparse(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        double density = Double.parseDouble(params.get("density"));
+        Random random = new Random(42);
+        Matrix a = new Matrix(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) if (random.nextDouble() < density) a.set(i, j, random.nextDouble());
+        }
+        Matrix b = randomMatrix(random, n, n), c = new Matrix(n, n);
+        SparseMatrix sparse = SparseMatrix.csr(a);
+        TiledGemm tiled = new TiledGemm();
+        switch (params.get("kind")) {
+            case "dense": return () -> { tiled.multiply(a, b, c); return c; };
+            case "csr": return () -> { SparseGemm.multiply(sparse, b, c); return c; };
+            case "spgemm": return () -> SparseGemm.multiply(sparse, sparse);
+            default: throw new IllegalArgumentException("Unknown kind " + params.get("kind"));
+        }
+    }
+
+
+    private static Bench.Invocation generate(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        if (params.get("generator").equals("precode")) return () -> Precode.generateMatrixA(42, n);
+        return () -> RandomMatrix.generate(42, n, n);
+    }
+
+
+    private static Bench.Invocation io(Map<String, String> params) throws IOException {
+        int n = Integer.parseInt(params.get("n"));
+        Matrix m = RandomMatrix.generate(42, n, n);
+        Path file = Files.createTempFile("matrix", ".bin");
+        file.toFile().deleteOnExit();
+        MatrixFile.write(file, m);
+        if (params.get("operation").equals("write")) return () -> { MatrixFile.write(file, m); return file; };
+        return () -> MatrixFile.read(file);
+    }
+
+
+    private static Bench.Invocation chain(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        Matrix a = RandomMatrix.generate(1, n, n / 10), b = RandomMatrix.generate(2, n / 10, n), c = RandomMatrix.generate(3, n, n);
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) x[i] = 1.0 / (i + 1);
+        MatrixExpr expr = MatrixExpr.of(a).times(b).times(c);
+        switch (params.get("plan")) {
+            case "left": return () -> {
+                Matrix abc = Gemm.multiply(Gemm.multiply(a, b), c), y = new Matrix(n, 1);
+                Gemm.multiply(abc, Matrix.wrap(x, n, 1), y);
+                return y;
+            };
+            case "matrix": return expr::evaluate;
+            case "expr": return () -> expr.times(x);
+            default: throw new IllegalArgumentException("Unknown plan " + params.get("plan"));
+        }
+    }
+
+
+    private static Bench.Invocation outOfCore(Map<String, String> params) throws IOException {
+        int n = Integer.parseInt(params.get("n")), tile = Integer.parseInt(params.get("tile"));
+        Path a = Files.createTempFile("a", ".tiles"), b = Files.createTempFile("b", ".tiles"), c = Files.createTempFile("c", ".tiles");
+        for (Path file : new Path[] {a, b, c}) file.toFile().deleteOnExit();
+        TiledMatrixFile.write(a, RandomMatrix.generate(1, n, n), tile);
+        TiledMatrixFile.write(b, RandomMatrix.generate(2, n, n), tile);
+        OutOfCoreGemm gemm = new OutOfCoreGemm(Long.parseLong(params.get("budget")) << 20);
+        return () -> { gemm.multiply(a, b, c); return c; };
+    }
+
+
+    private static Bench.Invocation transpose(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        Matrix a = Precode.generateMatrixA(42, n);
+        switch (params.get("mode")) {
+            case "naive": return () -> {
+                Matrix t = new Matrix(n, n);
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) t.data[j * n + i] = a.data[i * n + j];
+                }
+                return t;
+            };
+            case "blocked": return () -> Transpose.transpose(a);
+            case "inPlace": return () -> { Transpose.transposeInPlace(a); return a; };
+            default: throw new IllegalArgumentException("Unknown mode " + params.get("mode"));
+        }
+    }
+
+
+    private static Matrix randomMatrix(Random random, int rows, int cols) {
+        Matrix matrix = new Matrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) matrix.set(i, j, random.nextDouble());
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * A lazy matrix expression of products and transposes, like A * B * C or (A * B)^T, which is only computed when
+ * asked for, with evaluate() or times(double[]). Until then nothing is multiplied, copied nor transposed.
+ *
+ * Knowing the whole expression up front allows:
+ * - The order of the products: (A * B) * C and A * (B * C) are the same matrix, but not the same work, e.g.
+ *   10 x 1000 by 1000 x 10 by 10 x 1000 is 200 000 multiply-adds one way and 20 000 000 the other. The order with
+ *   the fewest multiply-adds is found from the shapes by dynamic programming (the matrix chain problem).
+ * - No transposed copies: a transpose is pushed down to the matrices, (A * B)^T = B^T * A^T, and a transposed
+ *   matrix is handed to TiledGemm as it is, which reads it transposed while packing it.
+ * - Matrix-vector tails: A * B * C * x is computed as A * (B * (C * x)), matrix-vector products only, which read
+ *   each matrix once and never make a matrix product.
+ *
+ * The expression is kept as the chain of its matrices, each with a flag telling if it is transposed.
+ */
+public final class MatrixExpr {
+    private final Matrix[] factors;
+    private final boolean[] transposed;
+
+
+    private MatrixExpr(Matrix[] factors, boolean[] transposed) {
+        this.factors = factors;
+        this.transposed = transposed;
+    }
+
+
+    /**
+     * @param m a matrix, used as it is: changes to it before the expression is evaluated show in the result
+     * @return the expression which is just m
+     */
+    public static MatrixExpr of(Matrix m) {
+        return new MatrixExpr(new Matrix[] {m}, new boolean[] {false});
+    }
+
+
+    /**
+     * @param other an expression with as many rows as this one has columns
+     * @return this * other
+     */
+    public MatrixExpr times(MatrixExpr other) {
+        if (cols() != other.rows())
+            throw new IllegalArgumentException(String.format("Can't multiply %d x %d by %d x %d", rows(), cols(), other.rows(), other.cols()));
+        int k = factors.length;
+        Matrix[] f = new Matrix[k + other.factors.length];
+        boolean[] t = new boolean[f.length];
+        System.arraycopy(factors, 0, f, 0, k);
+        System.arraycopy(transposed, 0, t, 0, k);
+        System.arraycopy(other.factors, 0, f, k, other.factors.length);
+        System.arraycopy(other.transposed, 0, t, k, other.factors.length);
+        return new MatrixExpr(f, t);
+    }
+
+
+    /**
+     * @return this * m
+     */
+    public MatrixExpr times(Matrix m) {
+        return times(of(m));
+    }
+
+
+    /**
+     * @return the transpose of this expression, the factors in reverse order, each transposed
+     */
+    public MatrixExpr transpose() {
+        int k = factors.length;
+        Matrix[] f = new Matrix[k];
+        boolean[] t = new boolean[k];
+        for (int i = 0; i < k; i++) {
+            f[i] = factors[k - 1 - i];
+            t[i] = !transposed[k - 1 - i];
+        }
+        return new MatrixExpr(f, t);
+    }
+
+
+    public int rows() {
+        return rows(0);
+    }
+
+
+    public int cols() {
+        return cols(factors.length - 1);
+    }
+
+
+    /**
+     * Computes the expression, in the order with the fewest multiply-adds, on the parallel kernels.
+     * @return a new matrix
+     */
+    public Matrix evaluate() {
+        Matrix result = evaluate(0, factors.length - 1, new Order());
+        if (factors.length > 1) return result;
+        return transposed[0] ? Transpose.transpose(result) : result.copy();    // never hand out a matrix of the caller
+    }
+
+
+    /**
+     * Computes the expression times a vector, as matrix-vector products from the right, which read every matrix
+     * once and make no matrix product.
+     * @param x vector of length cols()
+     * @return the expression times x, a new vector of length rows()
+     */
+    public double[] times(double[] x) {
+        if (x.length != cols()) throw new IllegalArgumentException("Can't multiply a " + rows() + " x " + cols() + " expression by a vector of " + x.length);
+        double[] y = x;
+        for (int i = factors.length - 1; i >= 0; i--) {
+            double[] next = new double[rows(i)];
+            Gemm.multiply(factors[i], transposed[i], y, next);
+            y = next;
+        }
+        return y;
+    }
+
+
+    /**
+     * @return number of multiply-adds evaluate() does, in the best order
+     */
+    public long cost() {
+        return new Order().cost[0][factors.length - 1];
+    }
+
+
+    /**
+     * @return the order evaluate() multiplies in, with M0, M1, ... for the matrices, from the left, and ^T for
+     *         a transposed one, e.g. (M0 (M1 M2^T))
+     */
+    public String plan() {
+        return plan(0, factors.length - 1, new Order());
+    }
+
+
+    private int rows(int i) {
+        return transposed[i] ? factors[i].cols : factors[i].rows;
+    }
+
+
+    private int cols(int i) {
+        return transposed[i] ? factors[i].rows : factors[i].cols;
+    }
+
+
+    /**
+     * The matrix chain problem: cost[i][j] is the fewest multiply-adds for the product of factors i, ..., j, which
+     * is the least over s of cost[i][s] + cost[s + 1][j] + rows(i) * cols(s) * cols(j), and split[i][j] that s.
+     */
+    private class Order {
+        final long[][] cost;
+        final int[][] split;
+
+        Order() {
+            int k = factors.length;
+            cost = new long[k][k];
+            split = new int[k][k];
+            for (int length = 2; length <= k; length++) {
+                for (int i = 0; i + length - 1 < k; i++) {
+                    int j = i + length - 1;
+                    cost[i][j] = Long.MAX_VALUE;
+                    for (int s = i; s < j; s++) {
+                        long c = cost[i][s] + cost[s + 1][j] + (long) rows(i) * cols(s) * cols(j);
+                        if (c < cost[i][j]) {
+                            cost[i][j] = c;
+                            split[i][j] = s;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return the product of factors i, ..., j, a factor itself (which may be transposed) if i == j
+     */
+    private Matrix evaluate(int i, int j, Order order) {
+        if (i == j) return factors[i];
+        int s = order.split[i][j];
+        Matrix left = evaluate(i, s, order), right = evaluate(s + 1, j, order);
+        boolean leftTransposed = (i == s) && transposed[i], rightTransposed = (s + 1 == j) && transposed[j];
+        Matrix c = new Matrix(rows(i), cols(j));
+        Gemm.multiply(left, leftTransposed, right, rightTransposed, c);
+        return c;
+    }
+
+
+    private String plan(int i, int j, Order order) {
+        if (i == j) return "M" + i + (transposed[i] ? "^T" : "");
+        int s = order.split[i][j];
+        return "(" + plan(i, s, order) + " " + plan(s + 1, j, order) + ")";
+    }
+}
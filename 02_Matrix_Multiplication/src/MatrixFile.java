@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A binary file format for matrices, read and written through memory-mapped files by all the threads of the
+ * WorkerPool, so large matrices load and save at the speed of the disk (or of the page cache), not of printf.
+ *
+ * The file is a header of HEADER_BYTES: the int MAGIC, the int VERSION, the int number of rows and the int
+ * number of columns, followed by the elements row by row, as 8-byte doubles. Everything is little-endian.
+ * The rows are mapped in bands of at most SEGMENT_BYTES, which the threads take one after another.
+ */
+public final class MatrixFile {
+    static final int MAGIC = 0x5854414D;                // "MATX" in a little-endian file
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final long SEGMENT_BYTES = 1L << 28;         // 256 MB mapped at a time
+
+    private MatrixFile() {}
+
+
+    /**
+     * @param file the file, replaced if it exists
+     * @param m the matrix (or view) to write
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path file, Matrix m) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel, m.rows, m.cols);
+            transfer(channel, m, true);
+        }
+    }
+
+
+    /**
+     * @param file a file written by write(..)
+     * @return a new matrix with the elements of the file
+     * @throws IOException if the file can't be read, or is not a matrix file
+     */
+    public static Matrix read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int[] shape = readHeader(channel, file);
+            Matrix m = new Matrix(shape[0], shape[1]);
+            transfer(channel, m, false);
+            return m;
+        }
+    }
+
+
+    /**
+     * Writes the header of a rows x cols matrix and makes the file its whole size, before the threads map it.
+     */
+    static void writeHeader(FileChannel channel, int rows, int cols) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols).flip();
+        while (header.hasRemaining()) channel.write(header);
+        long size = HEADER_BYTES + 8L * rows * cols;
+        if (size > HEADER_BYTES) channel.write(ByteBuffer.allocate(1), size - 1);
+    }
+
+
+    /**
+     * Reads and checks the header.
+     * @return the number of rows and of columns
+     * @throws IOException if the file is not a matrix file, or not as long as its header says
+     */
+    static int[] readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) { }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+            throw new IOException(file + " is not a matrix file");
+        int version = header.getInt(), rows = header.getInt(), cols = header.getInt();
+        if (version != VERSION) throw new IOException(file + " has version " + version + ", not " + VERSION);
+        if (rows < 0 || cols < 0 || channel.size() != HEADER_BYTES + 8L * rows * cols)
+            throw new IOException(file + " is " + channel.size() + " bytes long, which does not fit a " + rows + " x " + cols + " matrix");
+        return new int[] {rows, cols};
+    }
+
+
+    /**
+     * Copies the elements of m to the file (write) or from the file to m, band by band in parallel.
+     */
+    private static void transfer(FileChannel channel, Matrix m, boolean write) throws IOException {
+        if (m.rows == 0 || m.cols == 0) return;
+        long rowBytes = 8L * m.cols;
+        if (rowBytes > Integer.MAX_VALUE) throw new IOException("Rows of " + m.cols + " columns are too long to map");
+        int bandRows = (int) Math.max(1, SEGMENT_BYTES / rowBytes);
+        int bands = (m.rows + bandRows - 1) / bandRows;
+
+        int threads = Math.max(1, Math.min(WorkerPool.getParallelism(), bands));
+        AtomicInteger nextBand = new AtomicInteger();
+        BandWorker[] workers = new BandWorker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new BandWorker(channel, m, write, bandRows, bands, nextBand);
+        try {
+            if (threads == 1) workers[0].run();
+            else WorkerPool.invokeAll(workers);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    private static class BandWorker implements Runnable {
+        final FileChannel channel;
+        final Matrix m;
+        final boolean write;
+        final int bandRows, bands;
+        final AtomicInteger nextBand;
+
+        BandWorker(FileChannel channel, Matrix m, boolean write, int bandRows, int bands, AtomicInteger nextBand) {
+            this.channel = channel;
+            this.m = m;
+            this.write = write;
+            this.bandRows = bandRows;
+            this.bands = bands;
+            this.nextBand = nextBand;
+        }
+
+        @Override
+        public void run() {
+            int band;
+            while ((band = nextBand.getAndIncrement()) < bands) {
+                int first = band * bandRows, rows = Math.min(bandRows, m.rows - first);
+                long position = HEADER_BYTES + 8L * first * m.cols;
+                DoubleBuffer doubles;
+                try {
+                    doubles = channel.map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                            position, 8L * rows * m.cols).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (int i = first; i < first + rows; i++) {
+                    if (write) doubles.put(m.data, m.offset + i * m.stride, m.cols);
+                    else doubles.get(m.data, m.offset + i * m.stride, m.cols);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Multiplication of matrices too large for the heap, C = A * B, where A, B and C are TiledMatrixFiles with the
+ * same tile size, and at most memoryBudget bytes of tiles are in the heap at any time.
+ *
+ * The scheme is the one of TiledGemm one level up, with the heap for the cache and the disk for memory:
+ *
+ * - C is cut into blocks of br x bc tiles. A block of C stays in the heap while all of the depth is walked a tile
+ *   at a time: the column of br tiles of A and the row of bc tiles of B at that depth are read, and multiplied
+ *   into the block by TiledGemm, with all the threads. Then the block is written to the file of C, and is done,
+ *   so C is written once, one block after another.
+ * - br and bc are as large as the budget allows for the block and the two panels, br * bc + br + bc tiles, and
+ *   as close to square as possible: every tile read is used br or bc times, and a block of s x s tiles makes
+ *   2 s tile reads for s^2 tile products.
+ * - The blocks are taken in a snake order, left to right along a row of blocks and right to left along the next,
+ *   and the depth is walked forwards and backwards in turn. So the panel of A (or of B) from the end of a block
+ *   is the one needed first by the next block, and is used again without being read.
+ *
+ * The files are memory-mapped, so the reads and writes are copies to and from the page cache, and the operating
+ * system does the disk I/O as the tiles are used.
+ */
+public class OutOfCoreGemm {
+    private final long memoryBudget;
+    private final TiledGemm tiled = new TiledGemm();
+
+
+    /**
+     * @param memoryBudget most bytes of tiles in the heap, at least for three tiles
+     */
+    public OutOfCoreGemm(long memoryBudget) {
+        if (memoryBudget < 1) throw new IllegalArgumentException("The memory budget must be positive");
+        this.memoryBudget = memoryBudget;
+    }
+
+
+    /**
+     * Computes c = a * b, in a new tiled file with the tile size of a.
+     * @param a tiled file of an m x k matrix
+     * @param b tiled file of a k x n matrix, with the tile size of a
+     * @param c the tiled file of the m x n product, replaced if it exists. It must not be a or b.
+     * @throws IOException if a file can't be read or written
+     */
+    public void multiply(Path a, Path b, Path c) throws IOException {
+        try (TiledMatrixFile fa = TiledMatrixFile.open(a); TiledMatrixFile fb = TiledMatrixFile.open(b);
+             TiledMatrixFile fc = TiledMatrixFile.create(c, fa.rows, fb.cols, fa.tileSize)) {
+            multiply(fa, fb, fc);
+        }
+    }
+
+
+    /**
+     * Computes c = a * b.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, open for writing, receives the product. All three have the same tile size.
+     * @throws IOException if a file can't be read or written
+     */
+    public void multiply(TiledMatrixFile a, TiledMatrixFile b, TiledMatrixFile c) throws IOException {
+        if (a.cols != b.rows || c.rows != a.rows || c.cols != b.cols)
+            throw new IllegalArgumentException(String.format("Can't multiply %d x %d by %d x %d into %d x %d",
+                    a.rows, a.cols, b.rows, b.cols, c.rows, c.cols));
+        if (a.tileSize != b.tileSize || a.tileSize != c.tileSize)
+            throw new IllegalArgumentException(String.format("The tiles are of %d, %d and %d, not all the same",
+                    a.tileSize, b.tileSize, c.tileSize));
+        int t = a.tileSize, m = c.tileRows, n = c.tileCols, depth = a.tileCols;
+        if (m == 0 || n == 0) return;
+
+        int[] block = blockSize(t, m, n);
+        int br = block[0], bc = block[1];
+        Matrix cBlock = new Matrix(br * t, bc * t), aPanel = new Matrix(br * t, t), bPanel = new Matrix(t, bc * t);
+        int aRow = -1, aDepth = -1, bCol = -1, bDepth = -1;     // the panels in the heap, by their first tile
+        boolean forwards = true;
+
+        int blockRows = TiledGemm.tiles(m, br), blockCols = TiledGemm.tiles(n, bc);
+        for (int bi = 0; bi < blockRows; bi++) {
+            for (int step = 0; step < blockCols; step++) {
+                int bj = (bi % 2 == 0) ? step : blockCols - 1 - step;
+                int i0 = bi * br, j0 = bj * bc, rows = Math.min(br, m - i0), cols = Math.min(bc, n - j0);
+                Matrix cView = cBlock.view(0, 0, rows * t, cols * t);
+                cView.clear();
+
+                for (int s = 0; s < depth; s++) {
+                    int p = forwards ? s : depth - 1 - s;
+                    Matrix aView = aPanel.view(0, 0, rows * t, t), bView = bPanel.view(0, 0, t, cols * t);
+                    if (aRow != i0 || aDepth != p) {
+                        a.transfer(i0, p, rows, 1, aView, false);
+                        aRow = i0;
+                        aDepth = p;
+                    }
+                    if (bCol != j0 || bDepth != p) {
+                        b.transfer(p, j0, 1, cols, bView, false);
+                        bCol = j0;
+                        bDepth = p;
+                    }
+                    tiled.multiplyAdd(aView, bView, cView);
+                }
+                c.transfer(i0, j0, rows, cols, cView, true);
+                forwards = !forwards;
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of tiles of C in a block, br down and bc across: the largest square that fits in the
+     *         budget, made longer in one direction if the other is the whole matrix
+     */
+    private int[] blockSize(int t, int m, int n) {
+        long tiles = Math.min(memoryBudget / (8L * t * t), Integer.MAX_VALUE / ((long) t * t));  // a Matrix has < 2^31 elements
+        if (tiles < 3)
+            throw new IllegalArgumentException(String.format("A budget of %d bytes does not hold the 3 tiles of %d x %d needed",
+                    memoryBudget, t, t));
+        int s = 1;
+        while ((long) (s + 1) * (s + 1) + 2L * (s + 1) <= tiles) s++;
+        int br = Math.min(s, m), bc = Math.min(s, n);
+        bc = (int) Math.min(n, (tiles - br) / (br + 1));        // the most bc with br * bc + br + bc <= tiles
+        br = (int) Math.min(m, (tiles - bc) / (bc + 1));
+        return new int[] {br, bc};
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps matrices packed by a TiledGemm, so repeated products with the same B (a matrix of weights, say) pack it
+ * only the first time. A matrix is found by identity, and its packed copy is used as long as the version of the
+ * matrix is the one it was packed at: markChanged() makes it stale, and it is packed again.
+ *
+ * The cache is bounded by the bytes of the packed copies. When it is full, the copies which were used least
+ * recently are dropped. It holds on to the matrices it has packed until then, or until remove(..) or clear().
+ */
+public class PackCache {
+    private final TiledGemm tiled;
+    private final long maxBytes;
+    private final Map<Key, PackedMatrix> packed = new LinkedHashMap<>(16, 0.75f, true);   // least recently used first
+    private long bytes;
+
+
+    /**
+     * @param tiled packs the matrices, and must be the TiledGemm which multiplies with them
+     * @param maxBytes most bytes of packed copies kept at a time
+     */
+    public PackCache(TiledGemm tiled, long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("The size of the cache can't be negative, was " + maxBytes);
+        this.tiled = tiled;
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * @param b a matrix
+     * @return b packed, from the cache if it has an up to date copy, else packed now (and kept, if it fits)
+     */
+    public PackedMatrix get(Matrix b) {
+        Key key = new Key(b);
+        synchronized (this) {
+            PackedMatrix p = packed.get(key);
+            if (p != null && p.isCurrent()) return p;
+        }
+
+        PackedMatrix p = tiled.pack(b);     // outside the lock, so other matrices can be found meanwhile
+        synchronized (this) {
+            PackedMatrix old = packed.remove(key);
+            if (old != null) bytes -= old.bytes();
+            if (p.bytes() > maxBytes) return p;
+            for (Iterator<PackedMatrix> it = packed.values().iterator(); bytes + p.bytes() > maxBytes; ) {
+                bytes -= it.next().bytes();
+                it.remove();
+            }
+            packed.put(key, p);
+            bytes += p.bytes();
+        }
+        return p;
+    }
+
+
+    /**
+     * Drops the packed copy of b, if there is one.
+     */
+    public synchronized void remove(Matrix b) {
+        PackedMatrix p = packed.remove(new Key(b));
+        if (p != null) bytes -= p.bytes();
+    }
+
+
+    public synchronized void clear() {
+        packed.clear();
+        bytes = 0;
+    }
+
+
+    /**
+     * @return number of bytes of packed copies in the cache
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+
+    /**
+     * A matrix compared by identity: two views of the same data are different matrices.
+     */
+    private static final class Key {
+        final Matrix matrix;
+
+        Key(Matrix matrix) {
+            this.matrix = matrix;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).matrix == matrix;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(matrix);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * A right-hand matrix B packed for the micro-kernel of TiledGemm once and for all (see TiledGemm.pack(..)), so
+ * products with it don't pack it again. It is a copy: it does not follow changes to the matrix it was made from.
+ */
+public final class PackedMatrix {
+    final Matrix source;    // the matrix which was packed
+    final int version;      // version of source when it was packed
+    final double[] data;
+    final int kc, nr;       // depth of the blocks and width of the slivers
+    final int width;        // cols rounded up to whole slivers: block p0 starts at data[p0 * width]
+
+
+    PackedMatrix(Matrix source, double[] data, int kc, int nr) {
+        this.source = source;
+        this.version = source.version();
+        this.data = data;
+        this.kc = kc;
+        this.nr = nr;
+        this.width = (source.cols + nr - 1) / nr * nr;
+    }
+
+
+    public int rows() { return source.rows; }
+
+    public int cols() { return source.cols; }
+
+
+    /**
+     * @return true if the matrix it was packed from has not been changed since, as far as its version tells
+     */
+    public boolean isCurrent() {
+        return version == source.version();
+    }
+
+
+    /**
+     * @return number of bytes held by the packed copy
+     */
+    public long bytes() {
+        return 8L * data.length;
+    }
+}
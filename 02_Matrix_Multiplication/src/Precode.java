@@ -1,4 +1,5 @@
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.util.Random;
 
 /**
@@ -12,8 +13,8 @@ import java.util.Random;
  * To get the matrices you are going to multiply:
  * (Remember to read 'seed' and 'n' from the command line arguments)
  *
- * double[][] A = Oblig2Precode.generateMatrixA(seed,n);
- * double[][] B = Oblig2Precode.generateMatrixB(seed,n);
+ * Matrix A = Oblig2Precode.generateMatrixA(seed,n);
+ * Matrix B = Oblig2Precode.generateMatrixB(seed,n);
  *
  * (Notice it's two different methods)
  *
@@ -32,6 +33,7 @@ import java.util.Random;
  * Oblig2Precode.saveResult(seed, Oblig2Precode.Mode.SEQ_NOT_TRANSPOSED, seqNTResult);
  *
  * Beware that it'll only actually write files with max n=100.
+ * saveResultBinary(..) writes any size, as a binary matrix file.
  *
  *
  * Example file output:
@@ -61,7 +63,8 @@ class Oblig2Precode {
 		SEQ_B_TRANSPOSED,
 		PARA_NOT_TRANSPOSED,
 		PARA_A_TRANSPOSED,
-		PARA_B_TRANSPOSED
+		PARA_B_TRANSPOSED,
+		PARA_STRASSEN
 	}
 
 
@@ -72,7 +75,7 @@ class Oblig2Precode {
 	 * @param n Size of matrix (NxN)
 	 * @return Matrix A
 	 */
-	public static double[][] generateMatrixA(int seed, int n) {
+	public static Matrix generateMatrixA(int seed, int n) {
 		return generateMatrix(seed,n);
 	}
 
@@ -84,7 +87,7 @@ class Oblig2Precode {
 	 * @param n Size of matrix (NxN)
 	 * @return Matrix B
 	 */
-	public static double[][] generateMatrixB(int seed, int n) {
+	public static Matrix generateMatrixB(int seed, int n) {
 		return generateMatrix(seed + 1,n);
 	}
 
@@ -92,14 +95,14 @@ class Oblig2Precode {
 	/**
 	 * For internal use, actually generating the matrix
 	 */
-	private static double[][] generateMatrix(int seed, int n) {
-		double[][] m = new double[n][n];
+	private static Matrix generateMatrix(int seed, int n) {
+		Matrix m = new Matrix(n, n);
 
 		Random rnd = new Random(seed);
 
-		for(int i=0; i < n; i++)
-			for(int j=0; j < n; j++)
-				m[i][j] = rnd.nextDouble();
+		// Row by row, in the same order as before, so a seed still gives the same matrix
+		for(int i=0; i < n * n; i++)
+			m.data[i] = rnd.nextDouble();
 
 		return m;
 	}
@@ -115,12 +118,21 @@ class Oblig2Precode {
 	 * PARA_NOT_TRANSPOSED
 	 * PARA_A_TRANSPOSED
 	 * PARA_B_TRANSPOSED
+	 * PARA_STRASSEN
 	 *
 	 *
 	 * @param seed The seed used in generateMatrix
 	 * @param mode Which mode is this result from?
 	 * @param m The result of your matrix multiplication using this mode
 	 */
+	public static void saveResult(int seed, Mode mode, Matrix m) {
+		saveResult(seed, mode, m.toArray());
+	}
+
+
+	/**
+	 * Same as saveResult(int, Mode, Matrix), for a matrix as an array of rows.
+	 */
 	public static void saveResult(int seed, Mode mode, double[][] m) {
 
 		if(m.length > 100)
@@ -150,4 +162,43 @@ class Oblig2Precode {
 
 	}
 
+
+	/**
+	 * Saves the result as a binary matrix file (see MatrixFile), of any size,
+	 * to O2Result_seed_mode_n.bin. Read it back with MatrixFile.read(..) to compare results.
+	 *
+	 * @param seed The seed used in generateMatrix
+	 * @param mode Which mode is this result from?
+	 * @param m The result of your matrix multiplication using this mode
+	 */
+	public static void saveResultBinary(int seed, Mode mode, Matrix m) {
+		String filename = String.format("O2Result_%d_%s_%d.bin", seed, mode, m.rows());
+
+		try {
+			MatrixFile.write(Paths.get(filename), m);
+		} catch(Exception e) {
+			System.out.printf("Got exception when trying to write file %s : %s",filename, e.getMessage());
+		}
+	}
+
+}
+
+
+/**
+ * The matrices of Oblig2Precode, for the classes outside this file: Oblig2Precode is an auxiliary class of
+ * Precode.java, which javac warns about when it is used from another file.
+ */
+final class Precode {
+
+	private Precode() {}
+
+
+	public static Matrix generateMatrixA(int seed, int n) {
+		return Oblig2Precode.generateMatrixA(seed, n);
+	}
+
+
+	public static Matrix generateMatrixB(int seed, int n) {
+		return Oblig2Precode.generateMatrixB(seed, n);
+	}
 }
@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One measured run of a matrix kernel, with what is needed to place it on a roofline: the floating point
+ * operations done, the bytes estimated to move between the memory and the caches (see Workers.bytesMoved), and
+ * the wall time, from which the GFLOP/s, the GB/s and the arithmetic intensity (flops per byte) follow.
+ *
+ * It also tells how the threads spent the run:
+ * - busy: the CPU time of every thread of the WorkerPool, and of the calling thread, during the run. It is read
+ *   from the JVM (ThreadMXBean), so it covers every kernel, also the fork/join ones. Idle is the wall time minus
+ *   busy, and a thread of the pool which never ran is idle all the time.
+ * - wait: the time the tasks of the pool would have waited at the CyclicBarrier the threads used to meet at,
+ *   summed over them. For a WorkerPool.Phase it is, for every task, the time from its end to the end of the last
+ *   task of the phase, which is how unevenly the work was split. A fork/join kernel (WorkerPool.invoke) has no
+ *   barrier, and its wait is the time the threads of the pool did not run while the kernel did: the time they
+ *   found nothing to steal. The phases such a kernel submits are part of it, and are not counted again.
+ *
+ * A sequential kernel (measureSequential) runs on the calling thread alone: it is profiled as one thread, the
+ * calling one, and the pool is left out.
+ *
+ * Only one run is measured at a time, and the kernels pay nothing for it when no run is measured.
+ *
+ * The runs can be exported, as CSV (one row per run) or as JSON (an array of runs), for plotting.
+ */
+public final class Profile {
+    private static volatile Profile active;     // the run being measured, or null
+
+    public final String kernel;
+    public final int m, k, n, threads;
+    public final boolean sequential;            // computed by the calling thread alone, which is the one thread
+    public final long flops, bytes;
+    private long wallNanos, callerBusyNanos = -1;
+    private long[] busyNanos;                   // of every thread of the pool (or of the calling thread if sequential),
+                                                // -1 if the JVM can't tell
+    private final AtomicLong waitNanos = new AtomicLong();
+    private volatile boolean forkJoin;          // a fork/join kernel is being measured as a whole
+
+
+    private Profile(String kernel, int m, int k, int n, long bytes, boolean sequential) {
+        this.kernel = kernel;
+        this.m = m;
+        this.k = k;
+        this.n = n;
+        this.sequential = sequential;
+        this.threads = sequential ? 1 : WorkerPool.getParallelism();
+        this.flops = 2L * m * k * n;
+        this.bytes = bytes;
+    }
+
+
+    /**
+     * Runs a parallel kernel once and measures it, with all the threads of the WorkerPool.
+     * @param kernel name of the kernel
+     * @param m rows of the product
+     * @param k depth of the product, so the run does 2 m k n floating point operations
+     * @param n columns of the product
+     * @param bytes estimated bytes the kernel moves between memory and the caches
+     * @param run the kernel
+     * @return the measurements
+     */
+    public static Profile measure(String kernel, int m, int k, int n, long bytes, Runnable run) {
+        return measure(new Profile(kernel, m, k, n, bytes, false), run);
+    }
+
+
+    /**
+     * Runs a sequential kernel once and measures it, as one thread: the calling thread.
+     * @param kernel name of the kernel
+     * @param m rows of the product
+     * @param k depth of the product
+     * @param n columns of the product
+     * @param bytes estimated bytes the kernel moves between memory and the caches
+     * @param run the kernel, which must not use the WorkerPool
+     * @return the measurements
+     */
+    public static Profile measureSequential(String kernel, int m, int k, int n, long bytes, Runnable run) {
+        return measure(new Profile(kernel, m, k, n, bytes, true), run);
+    }
+
+
+    private static synchronized Profile measure(Profile profile, Runnable run) {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = mx.isThreadCpuTimeSupported();
+        if (cpuTime && !mx.isThreadCpuTimeEnabled()) mx.setThreadCpuTimeEnabled(true);
+        ForkJoinPool pool = WorkerPool.pool();
+
+        Map<Thread, Long> before = cpuTime ? cpuTimes(mx, pool) : null;
+        long callerBefore = cpuTime ? mx.getCurrentThreadCpuTime() : 0;
+        active = profile;
+        long start = System.nanoTime();
+        try {
+            run.run();
+        }
+        finally {
+            profile.wallNanos = System.nanoTime() - start;
+            active = null;
+        }
+
+        profile.busyNanos = new long[profile.threads];
+        if (!cpuTime) {
+            Arrays.fill(profile.busyNanos, -1);
+            return profile;
+        }
+        profile.callerBusyNanos = mx.getCurrentThreadCpuTime() - callerBefore;
+        if (profile.sequential) {
+            profile.busyNanos[0] = profile.callerBusyNanos;
+            return profile;
+        }
+        int t = 0;
+        for (Map.Entry<Thread, Long> after : cpuTimes(mx, pool).entrySet()) {
+            if (t == profile.threads) break;
+            profile.busyNanos[t++] = after.getValue() - before.getOrDefault(after.getKey(), 0L);
+        }
+        return profile;
+    }
+
+
+    /**
+     * @return the CPU time of every live thread of the pool, in the order of their names
+     */
+    private static Map<Thread, Long> cpuTimes(ThreadMXBean mx, ForkJoinPool pool) {
+        List<Thread> workers = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool) workers.add(thread);
+        }
+        workers.sort((x, y) -> x.getName().compareTo(y.getName()));
+        Map<Thread, Long> times = new LinkedHashMap<>();
+        for (Thread thread : workers) {
+            long time = mx.getThreadCpuTime(thread.getId());
+            if (time >= 0) times.put(thread, time);
+        }
+        return times;
+    }
+
+
+    /**
+     * Called by WorkerPool.Phase.await with the time the tasks of the phase waited for the last one, summed.
+     */
+    static void waited(long nanos) {
+        Profile profile = active;
+        if (profile != null) profile.waitNanos.addAndGet(nanos);
+    }
+
+
+    /**
+     * @return if WorkerPool should time the phases submitted now
+     */
+    static boolean isActive() {
+        Profile profile = active;
+        return profile != null && !profile.forkJoin;
+    }
+
+
+    /**
+     * Called by WorkerPool.invoke while a run is measured: runs a fork/join task in the pool, and adds to the wait
+     * the time the threads of the pool did not run while it did, summed over them.
+     */
+    static <T> T invoke(ForkJoinPool pool, ForkJoinTask<T> task) {
+        Profile profile = active;
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (profile == null || profile.forkJoin || !mx.isThreadCpuTimeEnabled()) return pool.invoke(task);
+
+        Map<Thread, Long> before = cpuTimes(mx, pool);
+        profile.forkJoin = true;
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = pool.invoke(task);
+        }
+        finally {
+            profile.forkJoin = false;
+        }
+        long wall = System.nanoTime() - start, busy = 0;
+        int t = 0;
+        for (Map.Entry<Thread, Long> after : cpuTimes(mx, pool).entrySet()) {
+            if (t++ == pool.getParallelism()) break;
+            busy += Math.min(wall, after.getValue() - before.getOrDefault(after.getKey(), 0L));
+        }
+        profile.waitNanos.addAndGet(Math.max(0, wall * pool.getParallelism() - busy));
+        return result;
+    }
+
+
+    public double millis() {
+        return wallNanos / 1e6;
+    }
+
+
+    public double gflops() {
+        return flops / (double) wallNanos;
+    }
+
+
+    /**
+     * @return estimated memory bandwidth used, in GB/s
+     */
+    public double gigabytesPerSecond() {
+        return bytes / (double) wallNanos;
+    }
+
+
+    /**
+     * @return floating point operations per byte moved, the x axis of the roofline
+     */
+    public double intensity() {
+        return flops / (double) bytes;
+    }
+
+
+    /**
+     * @return the CPU time in nanoseconds of every thread of the pool during the run, or of the calling thread
+     *         for a sequential run, -1 if it is not known
+     */
+    public long[] busyNanos() {
+        return busyNanos.clone();
+    }
+
+
+    /**
+     * @return the CPU time in nanoseconds of the calling thread during the run, -1 if it is not known
+     */
+    public long callerBusyNanos() {
+        return callerBusyNanos;
+    }
+
+
+    /**
+     * @return the time the threads of the pool (or the calling thread, if sequential) did not run, in
+     *         nanoseconds, summed over them
+     */
+    public long idleNanos() {
+        long idle = 0;
+        for (long busy : busyNanos) idle += Math.max(0, wallNanos - Math.max(0, busy));
+        return idle;
+    }
+
+
+    /**
+     * @return the time the tasks of the pool waited for each other, in nanoseconds, summed over them
+     */
+    public long waitNanos() {
+        return waitNanos.get();
+    }
+
+
+    /**
+     * @return the share of the time of the threads they were busy, from 0 to 1. The calling thread counts as
+     *         busy as well when it computes, as it does for small products, which it computes alone. For a
+     *         sequential run it is the share of the time the calling thread was busy.
+     */
+    public double utilization() {
+        long busy = sequential ? 0 : Math.max(0, callerBusyNanos);
+        for (long b : busyNanos) busy += Math.max(0, b);
+        return Math.min(1, busy / ((double) wallNanos * threads));
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-21s %5d x %5d x %5d %3d threads %10.3f ms %8.3f GFLOP/s %8.3f GB/s %7.2f flop/B  busy %5.1f %%  wait %8.3f ms",
+                kernel, m, k, n, threads, millis(), gflops(), gigabytesPerSecond(), intensity(), 100 * utilization(), waitNanos() / 1e6);
+    }
+
+
+    public static String csvHeader() {
+        return "kernel,sequential,m,k,n,threads,ms,flops,bytes,gflops,gb_per_s,flops_per_byte,utilization,caller_busy_ms,"
+                + "idle_ms,wait_ms,busy_ms_per_thread";
+    }
+
+
+    /**
+     * @return the run as a line of CSV, with the busy time of the threads separated by spaces in the last column
+     */
+    public String toCsv() {
+        StringBuilder perThread = new StringBuilder();
+        for (long busy : busyNanos) perThread.append(perThread.length() > 0 ? " " : "").append(ms(busy));
+        return String.join(",", '"' + kernel + '"', "" + sequential, "" + m, "" + k, "" + n, "" + threads, ms(wallNanos), "" + flops,
+                "" + bytes, number(gflops()), number(gigabytesPerSecond()), number(intensity()), number(utilization()),
+                ms(callerBusyNanos), ms(idleNanos()), ms(waitNanos()), perThread.toString());
+    }
+
+
+    public String toJson() {
+        StringBuilder perThread = new StringBuilder();
+        for (long busy : busyNanos) perThread.append(perThread.length() > 0 ? ", " : "").append(ms(busy));
+        return "  {\n"
+                + "    \"kernel\" : \"" + kernel + "\",\n"
+                + "    \"sequential\" : " + sequential + ",\n"
+                + "    \"m\" : " + m + ", \"k\" : " + k + ", \"n\" : " + n + ", \"threads\" : " + threads + ",\n"
+                + "    \"ms\" : " + ms(wallNanos) + ",\n"
+                + "    \"flops\" : " + flops + ",\n"
+                + "    \"bytes\" : " + bytes + ",\n"
+                + "    \"gflops\" : " + number(gflops()) + ",\n"
+                + "    \"gbPerSecond\" : " + number(gigabytesPerSecond()) + ",\n"
+                + "    \"flopsPerByte\" : " + number(intensity()) + ",\n"
+                + "    \"utilization\" : " + number(utilization()) + ",\n"
+                + "    \"callerBusyMs\" : " + ms(callerBusyNanos) + ",\n"
+                + "    \"idleMs\" : " + ms(idleNanos()) + ",\n"
+                + "    \"waitMs\" : " + ms(waitNanos()) + ",\n"
+                + "    \"busyMsPerThread\" : [ " + perThread + " ]\n"
+                + "  }";
+    }
+
+
+    /**
+     * Writes the runs as CSV, with a header line.
+     * @throws IOException if the file can't be written
+     */
+    public static void writeCsv(Path file, List<Profile> profiles) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(csvHeader());
+        for (Profile profile : profiles) lines.add(profile.toCsv());
+        Files.write(file, lines);
+    }
+
+
+    /**
+     * Writes the runs as a JSON array.
+     * @throws IOException if the file can't be written
+     */
+    public static void writeJson(Path file, List<Profile> profiles) throws IOException {
+        List<String> runs = new ArrayList<>();
+        for (Profile profile : profiles) runs.add(profile.toJson());
+        Files.writeString(file, "[\n" + String.join(",\n", runs) + "\n]\n");
+    }
+
+
+    private static String ms(long nanos) {
+        return (nanos < 0) ? "-1" : number(nanos / 1e6);
+    }
+
+
+    private static String number(double d) {
+        return Double.isNaN(d) || Double.isInfinite(d) ? "\"NaN\"" : String.format(Locale.ROOT, "%.6g", d);
+    }
+}
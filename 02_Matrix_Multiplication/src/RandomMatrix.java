@@ -0,0 +1,79 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matrices of random numbers in [0, 1), generated by all the threads of the WorkerPool and still the same for a
+ * seed whatever the number of threads.
+ *
+ * The rows are cut into blocks of BLOCK_ROWS, and every block gets its own stream of random numbers, split off
+ * the stream of the seed block by block (SplittableRandom.split()), so the numbers of a block only depend on the
+ * seed and on which block it is, not on the thread which fills it, nor on when. The threads claim the blocks one
+ * after another.
+ *
+ * These are not the matrices of Oblig2Precode, which come from one java.util.Random and must be filled in order.
+ */
+public final class RandomMatrix {
+    static final int BLOCK_ROWS = 64;
+
+    private RandomMatrix() {}
+
+
+    /**
+     * @param seed the seed, the same seed gives the same matrix
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return a new matrix of random numbers in [0, 1)
+     */
+    public static Matrix generate(long seed, int rows, int cols) {
+        Matrix m = new Matrix(rows, cols);
+        fill(m, seed);
+        return m;
+    }
+
+
+    /**
+     * Overwrites every element of m with a random number in [0, 1).
+     * @param m the matrix (or view) to fill
+     * @param seed the seed, the same seed gives the same elements for the same shape
+     */
+    public static void fill(Matrix m, long seed) {
+        int blocks = (m.rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[blocks];
+        for (int i = 0; i < blocks; i++) streams[i] = root.split();
+
+        int threads = Math.max(1, Math.min(WorkerPool.getParallelism(), blocks));
+        AtomicInteger nextBlock = new AtomicInteger();
+        BlockWorker[] workers = new BlockWorker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new BlockWorker(m, streams, nextBlock);
+        if (threads == 1) workers[0].run();
+        else WorkerPool.invokeAll(workers);
+        m.markChanged();
+    }
+
+
+    private static class BlockWorker implements Runnable {
+        final Matrix m;
+        final SplittableRandom[] streams;
+        final AtomicInteger nextBlock;
+
+        BlockWorker(Matrix m, SplittableRandom[] streams, AtomicInteger nextBlock) {
+            this.m = m;
+            this.streams = streams;
+            this.nextBlock = nextBlock;
+        }
+
+        @Override
+        public void run() {
+            int block;
+            while ((block = nextBlock.getAndIncrement()) < streams.length) {
+                SplittableRandom random = streams[block];
+                int end = Math.min(m.rows, (block + 1) * BLOCK_ROWS);
+                for (int i = block * BLOCK_ROWS; i < end; i++) {
+                    int row = m.offset + i * m.stride;
+                    for (int j = 0; j < m.cols; j++) m.data[row + j] = random.nextDouble();
+                }
+            }
+        }
+    }
+}
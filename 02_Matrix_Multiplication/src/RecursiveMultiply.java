@@ -0,0 +1,113 @@
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Divide and conquer matrix multiplication, C = A * B, on the ForkJoinPool of the WorkerPool.
+ *
+ * The product of an m x k matrix and a k x n matrix is cut in two along the largest of m, n and k, over and over,
+ * until all three are at most LEAF_SIZE. Cutting m (the rows of A and C) or n (the columns of B and C) gives two
+ * products writing to different halves of C, which run in parallel; cutting k gives two products adding to the
+ * same C, which run one after the other. Since the pieces keep getting smaller in every direction, at some depth
+ * they fit in each level of the cache, whatever its size (cache-oblivious), and the shape of the matrices doesn't
+ * matter: tall, wide and thin products are cut where they are large. Idle threads steal the pieces which are
+ * waiting, so the work is balanced without deciding up front who does what.
+ */
+public class RecursiveMultiply {
+    static final int LEAF_SIZE = 64;                    // a 64 x 64 block of doubles is 32 KB
+    private static final long PARALLEL_MIN = 1L << 18;  // products with fewer multiplications are not split in parallel
+
+    private RecursiveMultiply() {}
+
+
+    /**
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public static void multiply(Matrix a, Matrix b, Matrix c) {
+        TiledGemm.checkShapes(a, b, c);
+        c.clear();
+        WorkerPool.invoke(new Product(a, b, c));
+    }
+
+
+    /**
+     * Computes c += a * b.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, the product is added to it. It must not share elements with a or b.
+     */
+    public static void multiplyAdd(Matrix a, Matrix b, Matrix c) {
+        TiledGemm.checkShapes(a, b, c);
+        WorkerPool.invoke(new Product(a, b, c));
+    }
+
+
+    /**
+     * Adds a * b to c.
+     */
+    private static class Product extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Matrix a, b, c;
+
+        Product(Matrix a, Matrix b, Matrix c) {
+            this.a = a; this.b = b; this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            int m = a.rows, k = a.cols, n = b.cols;
+            if (m <= LEAF_SIZE && n <= LEAF_SIZE && k <= LEAF_SIZE) {
+                leaf(a, b, c);
+                return;
+            }
+            boolean parallel = (long) m * n * k >= PARALLEL_MIN;
+
+            if (m >= n && m >= k) {                 // cut the rows of A and C
+                int h = m / 2;
+                Product top = new Product(a.view(0, 0, h, k), b, c.view(0, 0, h, n));
+                Product bottom = new Product(a.view(h, 0, m - h, k), b, c.view(h, 0, m - h, n));
+                if (parallel) invokeAll(top, bottom);
+                else { top.compute(); bottom.compute(); }
+            }
+            else if (n >= k) {                      // cut the columns of B and C
+                int h = n / 2;
+                Product left = new Product(a, b.view(0, 0, k, h), c.view(0, 0, m, h));
+                Product right = new Product(a, b.view(0, h, k, n - h), c.view(0, h, m, n - h));
+                if (parallel) invokeAll(left, right);
+                else { left.compute(); right.compute(); }
+            }
+            else {                                  // cut the depth: both halves add to all of C, one after the other
+                int h = k / 2;
+                new Product(a.view(0, 0, m, h), b.view(0, 0, h, n), c).compute();
+                new Product(a.view(0, h, m, k - h), b.view(h, 0, k - h, n), c).compute();
+            }
+        }
+    }
+
+
+    /**
+     * Adds a * b to c, for small matrices. Row i of C gets a[i][p] times row p of B, for every p, which walks
+     * B and C along their rows, and has no sum to carry from one step to the next, so the JIT can vectorize it.
+     */
+    private static void leaf(Matrix a, Matrix b, Matrix c) {
+        double[] ad = a.data, bd = b.data, cd = c.data;
+        int k = a.cols, n = c.cols, ldb = b.stride;
+        for (int i = 0; i < a.rows; i++) {
+            int aRow = a.offset + i * a.stride, cRow = c.offset + i * c.stride;
+            int p = 0;
+            for (; p + 4 <= k; p += 4) {            // four rows of B at a time, so row i of C is loaded and stored a quarter as often
+                double a0 = ad[aRow + p], a1 = ad[aRow + p + 1], a2 = ad[aRow + p + 2], a3 = ad[aRow + p + 3];
+                int b0 = b.offset + p * ldb;
+                for (int j = 0; j < n; j++) {
+                    cd[cRow + j] += a0 * bd[b0 + j] + a1 * bd[b0 + ldb + j] + a2 * bd[b0 + 2 * ldb + j] + a3 * bd[b0 + 3 * ldb + j];
+                }
+            }
+            for (; p < k; p++) {
+                double aip = ad[aRow + p];
+                int bRow = b.offset + p * ldb;
+                for (int j = 0; j < n; j++) cd[cRow + j] += aip * bd[bRow + j];
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Parallel multiplications with sparse matrices (see SparseMatrix): sparse times dense, dense times sparse,
+ * sparse times vector and sparse times sparse. The work only touches the nonzeros, so it is proportional to
+ * them instead of to n^3.
+ *
+ * The rows of the result are shared out between the threads, but not by counting rows: with sparse matrices one
+ * row can have a thousand times the nonzeros of the next. Instead the rows are cut into parts of the same cost,
+ * where the cost of a row is the number of multiply-adds it takes (found from the pointers of the sparse
+ * operands), and the threads claim the parts one after another. Products of less than PARALLEL_MIN multiply-adds
+ * are computed on the calling thread.
+ */
+public class SparseGemm {
+    private static final long PARALLEL_MIN = 1L << 18;  // products with fewer multiply-adds run on the calling thread
+    private static final int PARTS_PER_THREAD = 4;      // more parts than threads, so a slow part is made up for
+
+    private SparseGemm() {}
+
+
+    /**
+     * Computes c = a * b, where a is sparse (converted to CSR if it is CSC).
+     * @param a m x k sparse matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product. It must not share elements with b.
+     */
+    public static void multiply(SparseMatrix a, Matrix b, Matrix c) {
+        checkShapes(a.rows, a.cols, b.rows, b.cols, c.rows, c.cols);
+        SparseMatrix csr = a.toCsr();
+        long[] cost = new long[a.rows + 1];
+        for (int i = 0; i <= a.rows; i++) cost[i] = ((long) csr.pointers[i] + i) * b.cols;
+        runAll(cost, () -> new SparseDenseWorker(csr, b, c));
+    }
+
+
+    /**
+     * Computes c = a * b, where b is sparse (converted to CSC if it is CSR).
+     * @param a m x k matrix
+     * @param b k x n sparse matrix
+     * @param c m x n matrix, receives the product. It must not share elements with a.
+     */
+    public static void multiply(Matrix a, SparseMatrix b, Matrix c) {
+        checkShapes(a.rows, a.cols, b.rows, b.cols, c.rows, c.cols);
+        SparseMatrix csc = b.toCsc();
+        long rowCost = (long) csc.nonZeros() + b.cols;          // every row of a meets all of b
+        long[] cost = new long[a.rows + 1];
+        for (int i = 0; i <= a.rows; i++) cost[i] = i * rowCost;
+        runAll(cost, () -> new DenseSparseWorker(a, csc, c));
+    }
+
+
+    /**
+     * Computes y = a * x.
+     * @param a m x k sparse matrix
+     * @param x vector of length k
+     * @param y vector of length m, receives the product
+     */
+    public static void multiply(SparseMatrix a, double[] x, double[] y) {
+        checkShapes(a.rows, a.cols, x.length, 1, y.length, 1);
+        SparseMatrix csr = a.toCsr();
+        long[] cost = new long[a.rows + 1];
+        for (int i = 0; i <= a.rows; i++) cost[i] = (long) csr.pointers[i] + i;
+        runAll(cost, () -> new VectorWorker(csr, x, y));
+    }
+
+
+    /**
+     * Computes a * b with Gustavson's algorithm: row i of the product is the sum of the rows of b picked by the
+     * nonzeros of row i of a, gathered in a dense row. It is done in two passes over the same parts, the first
+     * counting the nonzeros of every row of the product, so the second can write them straight to where they go.
+     * @param a m x k sparse matrix
+     * @param b k x n sparse matrix
+     * @return a * b, m x n, compressed by rows. The cancellations which give exact zeros are stored.
+     */
+    public static SparseMatrix multiply(SparseMatrix a, SparseMatrix b) {
+        checkShapes(a.rows, a.cols, b.rows, b.cols, a.rows, b.cols);
+        SparseMatrix csrA = a.toCsr(), csrB = b.toCsr();
+        long[] cost = new long[a.rows + 1];
+        for (int i = 0; i < a.rows; i++) {
+            long rowCost = 1;
+            for (int p = csrA.pointers[i]; p < csrA.pointers[i + 1]; p++) {
+                int k = csrA.indices[p];
+                rowCost += csrB.pointers[k + 1] - csrB.pointers[k];
+            }
+            cost[i + 1] = cost[i] + rowCost;
+        }
+
+        int[] pointers = new int[a.rows + 1];
+        runAll(cost, () -> new SparseSparseWorker(csrA, csrB, pointers, null, null));
+        for (int i = 0; i < a.rows; i++) pointers[i + 1] = Math.addExact(pointers[i + 1], pointers[i]);
+
+        int[] indices = new int[pointers[a.rows]];
+        double[] values = new double[pointers[a.rows]];
+        runAll(cost, () -> new SparseSparseWorker(csrA, csrB, pointers, indices, values));
+        return new SparseMatrix(a.rows, b.cols, false, pointers, indices, values);
+    }
+
+
+    private static void checkShapes(int aRows, int aCols, int bRows, int bCols, int cRows, int cCols) {
+        if (aCols != bRows || cRows != aRows || cCols != bCols)
+            throw new IllegalArgumentException(String.format("Can't multiply %d x %d by %d x %d into %d x %d",
+                    aRows, aCols, bRows, bCols, cRows, cCols));
+    }
+
+
+    /**
+     * Cuts the rows into parts of about the same cost and has them computed by workers from the factory.
+     * @param cost cost[i] is the cost of rows 0, ..., i - 1, so cost[rows] is the total
+     */
+    private static void runAll(long[] cost, Supplier<RowWorker> factory) {
+        int rows = cost.length - 1;
+        long total = cost[rows];
+        int threads = (total < PARALLEL_MIN) ? 1 : Math.min(WorkerPool.getParallelism(), rows);
+        int parts = (threads <= 1) ? 1 : Math.min(rows, threads * PARTS_PER_THREAD);
+
+        int[] bounds = new int[parts + 1];
+        bounds[parts] = rows;
+        for (int t = 1; t < parts; t++) {
+            long target = total / parts * t + total % parts * t / parts;
+            int pos = Arrays.binarySearch(cost, bounds[t - 1], rows + 1, target);
+            bounds[t] = Math.min((pos >= 0) ? pos : -pos - 1, rows);
+        }
+
+        AtomicInteger nextPart = new AtomicInteger();
+        RowWorker[] workers = new RowWorker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = factory.get();
+            workers[i].bounds = bounds;
+            workers[i].nextPart = nextPart;
+        }
+        if (threads == 1) workers[0].run();
+        else WorkerPool.invokeAll(workers);
+    }
+
+
+    /**
+     * Takes parts of the rows one after another until there are none left.
+     */
+    private abstract static class RowWorker implements Runnable {
+        int[] bounds;               // part t is rows bounds[t], ..., bounds[t + 1] - 1
+        AtomicInteger nextPart;
+
+        @Override
+        public void run() {
+            int part;
+            while ((part = nextPart.getAndIncrement()) < bounds.length - 1) {
+                if (bounds[part] < bounds[part + 1]) rows(bounds[part], bounds[part + 1]);
+            }
+        }
+
+        abstract void rows(int from, int to);
+    }
+
+
+    /**
+     * Row i of c is the sum of a[i][k] times row k of b, for the nonzeros of row i of a.
+     */
+    private static class SparseDenseWorker extends RowWorker {
+        final SparseMatrix a;
+        final Matrix b, c;
+
+        SparseDenseWorker(SparseMatrix a, Matrix b, Matrix c) {
+            this.a = a; this.b = b; this.c = c;
+        }
+
+        @Override
+        void rows(int from, int to) {
+            double[] bd = b.data, cd = c.data;
+            int n = c.cols;
+            for (int i = from; i < to; i++) {
+                int cRow = c.offset + i * c.stride;
+                Arrays.fill(cd, cRow, cRow + n, 0);
+                for (int p = a.pointers[i]; p < a.pointers[i + 1]; p++) {
+                    double aik = a.values[p];
+                    int bRow = b.offset + a.indices[p] * b.stride;
+                    for (int j = 0; j < n; j++) cd[cRow + j] += aik * bd[bRow + j];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * c[i][j] is the sum of a[i][k] times b[k][j], for the nonzeros of column j of b.
+     */
+    private static class DenseSparseWorker extends RowWorker {
+        final Matrix a, c;
+        final SparseMatrix b;
+
+        DenseSparseWorker(Matrix a, SparseMatrix b, Matrix c) {
+            this.a = a; this.b = b; this.c = c;
+        }
+
+        @Override
+        void rows(int from, int to) {
+            double[] ad = a.data, cd = c.data;
+            for (int i = from; i < to; i++) {
+                int aRow = a.offset + i * a.stride, cRow = c.offset + i * c.stride;
+                for (int j = 0; j < c.cols; j++) {
+                    double sum = 0;
+                    for (int p = b.pointers[j]; p < b.pointers[j + 1]; p++) sum += ad[aRow + b.indices[p]] * b.values[p];
+                    cd[cRow + j] = sum;
+                }
+            }
+        }
+    }
+
+
+    private static class VectorWorker extends RowWorker {
+        final SparseMatrix a;
+        final double[] x, y;
+
+        VectorWorker(SparseMatrix a, double[] x, double[] y) {
+            this.a = a; this.x = x; this.y = y;
+        }
+
+        @Override
+        void rows(int from, int to) {
+            for (int i = from; i < to; i++) {
+                double sum = 0;
+                for (int p = a.pointers[i]; p < a.pointers[i + 1]; p++) sum += a.values[p] * x[a.indices[p]];
+                y[i] = sum;
+            }
+        }
+    }
+
+
+    /**
+     * Without indices and values (the first pass), counts the nonzeros of row i of the product into
+     * pointers[i + 1]. With them (the second pass), writes the nonzeros of row i from pointers[i], in
+     * increasing order of column.
+     */
+    private static class SparseSparseWorker extends RowWorker {
+        final SparseMatrix a, b;
+        final int[] pointers, indices;
+        final double[] values;
+
+        SparseSparseWorker(SparseMatrix a, SparseMatrix b, int[] pointers, int[] indices, double[] values) {
+            this.a = a; this.b = b;
+            this.pointers = pointers;
+            this.indices = indices;
+            this.values = values;
+        }
+
+        @Override
+        void rows(int from, int to) {
+            int[] seen = new int[b.cols];               // seen[j] == i + 1 if column j is already in row i
+            double[] row = (values == null) ? null : new double[b.cols];
+            for (int i = from; i < to; i++) {
+                int count = 0, start = (values == null) ? 0 : pointers[i];
+                for (int p = a.pointers[i]; p < a.pointers[i + 1]; p++) {
+                    int k = a.indices[p];
+                    double aik = a.values[p];
+                    for (int q = b.pointers[k]; q < b.pointers[k + 1]; q++) {
+                        int j = b.indices[q];
+                        if (seen[j] != i + 1) {
+                            seen[j] = i + 1;
+                            if (values != null) {
+                                indices[start + count] = j;
+                                row[j] = 0;
+                            }
+                            count++;
+                        }
+                        if (values != null) row[j] += aik * b.values[q];
+                    }
+                }
+                if (values == null) {
+                    pointers[i + 1] = count;
+                    continue;
+                }
+                Arrays.sort(indices, start, start + count);
+                for (int q = start; q < start + count; q++) values[q] = row[indices[q]];
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/**
+ * A sparse matrix of doubles which only stores its nonzero elements, compressed by rows (CSR) or by columns (CSC).
+ *
+ * In CSR the nonzeros of row i are values[pointers[i], pointers[i + 1]), in columns indices[..] of the same
+ * range, in increasing order. CSC is the same with rows and columns swapped: the nonzeros of column j, and their
+ * rows. A rows x cols matrix in CSC has the same arrays as its cols x rows transpose in CSR.
+ *
+ * The multiplications (see SparseGemm) read the left operand by rows and a sparse right operand of a dense one
+ * by columns, and convert an operand which is the other way, so pick the layout to fit where it is used.
+ */
+public final class SparseMatrix {
+    final int rows, cols;
+    final boolean byColumns;    // CSC if true, CSR if false
+    final int[] pointers;       // for every row (CSR) or column (CSC), where its nonzeros start, and at the end nnz
+    final int[] indices;        // column (CSR) or row (CSC) of every nonzero
+    final double[] values;
+
+
+    SparseMatrix(int rows, int cols, boolean byColumns, int[] pointers, int[] indices, double[] values) {
+        if (pointers.length != (byColumns ? cols : rows) + 1 || indices.length < pointers[pointers.length - 1]
+                || values.length < pointers[pointers.length - 1])
+            throw new IllegalArgumentException("The arrays do not fit a " + rows + " x " + cols + " sparse matrix");
+        this.rows = rows;
+        this.cols = cols;
+        this.byColumns = byColumns;
+        this.pointers = pointers;
+        this.indices = indices;
+        this.values = values;
+    }
+
+
+    /**
+     * @param m a dense matrix (or view)
+     * @return the nonzero elements of m, compressed by rows
+     */
+    public static SparseMatrix csr(Matrix m) {
+        int[] pointers = new int[m.rows + 1];
+        for (int i = 0; i < m.rows; i++) {
+            int row = m.offset + i * m.stride, count = 0;
+            for (int j = 0; j < m.cols; j++) if (m.data[row + j] != 0) count++;
+            pointers[i + 1] = pointers[i] + count;
+        }
+        int[] indices = new int[pointers[m.rows]];
+        double[] values = new double[pointers[m.rows]];
+        for (int i = 0, pos = 0; i < m.rows; i++) {
+            int row = m.offset + i * m.stride;
+            for (int j = 0; j < m.cols; j++) {
+                double x = m.data[row + j];
+                if (x != 0) {
+                    indices[pos] = j;
+                    values[pos++] = x;
+                }
+            }
+        }
+        return new SparseMatrix(m.rows, m.cols, false, pointers, indices, values);
+    }
+
+
+    /**
+     * @param m a dense matrix (or view)
+     * @return the nonzero elements of m, compressed by columns
+     */
+    public static SparseMatrix csc(Matrix m) {
+        return csr(m).toCsc();
+    }
+
+
+    public int rows() { return rows; }
+
+    public int cols() { return cols; }
+
+
+    /**
+     * @return number of stored elements
+     */
+    public int nonZeros() {
+        return pointers[pointers.length - 1];
+    }
+
+
+    public boolean isCsc() {
+        return byColumns;
+    }
+
+
+    public double get(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= cols)
+            throw new IndexOutOfBoundsException(String.format("(%d, %d) is outside the %d x %d matrix", i, j, rows, cols));
+        int line = byColumns ? j : i;
+        int pos = Arrays.binarySearch(indices, pointers[line], pointers[line + 1], byColumns ? i : j);
+        return (pos >= 0) ? values[pos] : 0;
+    }
+
+
+    /**
+     * @return this matrix compressed by rows, itself if it already is
+     */
+    public SparseMatrix toCsr() {
+        return byColumns ? swapLayout() : this;
+    }
+
+
+    /**
+     * @return this matrix compressed by columns, itself if it already is
+     */
+    public SparseMatrix toCsc() {
+        return byColumns ? this : swapLayout();
+    }
+
+
+    /**
+     * @return the same matrix, compressed the other way. A counting sort of the nonzeros by their index, which
+     *         keeps the indices of every new row (or column) in increasing order.
+     */
+    private SparseMatrix swapLayout() {
+        int lines = pointers.length - 1, others = byColumns ? rows : cols, nnz = nonZeros();
+        int[] newPointers = new int[others + 1];
+        for (int p = 0; p < nnz; p++) newPointers[indices[p] + 1]++;
+        for (int k = 0; k < others; k++) newPointers[k + 1] += newPointers[k];
+
+        int[] next = Arrays.copyOf(newPointers, others), newIndices = new int[nnz];
+        double[] newValues = new double[nnz];
+        for (int line = 0; line < lines; line++) {
+            for (int p = pointers[line]; p < pointers[line + 1]; p++) {
+                int q = next[indices[p]]++;
+                newIndices[q] = line;
+                newValues[q] = values[p];
+            }
+        }
+        return new SparseMatrix(rows, cols, !byColumns, newPointers, newIndices, newValues);
+    }
+
+
+    /**
+     * @return a new dense matrix with the same elements
+     */
+    public Matrix toDense() {
+        Matrix m = new Matrix(rows, cols);
+        for (int line = 0; line < pointers.length - 1; line++) {
+            for (int p = pointers[line]; p < pointers[line + 1]; p++) {
+                if (byColumns) m.data[indices[p] * cols + line] = values[p];
+                else m.data[line * cols + indices[p]] = values[p];
+            }
+        }
+        return m;
+    }
+}
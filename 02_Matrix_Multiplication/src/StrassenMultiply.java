@@ -0,0 +1,210 @@
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Strassen's matrix multiplication, in Winograd's variant: an n x n product is cut into 2 x 2 blocks and computed
+ * with 7 products of n/2 x n/2 blocks (and 15 additions) instead of 8, recursively, which is O(n^2.81) instead of
+ * O(n^3). Below the crossover size, where the additions cost more than the product they save, the blocks are
+ * multiplied with TiledGemm.
+ *
+ * The 7 products of each level run in parallel on the ForkJoinPool of the WorkerPool. The temporary blocks
+ * (the sums of blocks of A and B, and the 7 products) are taken from a pool of buffers and given back when the
+ * level is done, so repeated and recursive multiplications reuse the same memory. At most MAX_BUFFERS of each
+ * size are kept, and the pool keeps them until releaseBuffers is called, so a caller which is done with
+ * multiplying, or moves on to other sizes, should call it.
+ *
+ * The price is precision: the error grows faster with n than for the classic algorithm, since the sums of blocks
+ * cancel each other out. Main reports it against the classic result.
+ */
+public class StrassenMultiply {
+    public static final int DEFAULT_CROSSOVER = 512;
+    private static final int MAX_BUFFERS = 64;         // buffers of one size kept in the pool, more are left to the GC
+
+    private final int crossover;
+    private final TiledGemm tiled = new TiledGemm();
+    private final Map<Integer, ArrayBlockingQueue<double[]>> buffers = new ConcurrentHashMap<>();
+
+
+    public StrassenMultiply() {
+        this(DEFAULT_CROSSOVER);
+    }
+
+
+    /**
+     * @param crossover blocks of this size and smaller are multiplied with TiledGemm
+     */
+    public StrassenMultiply(int crossover) {
+        if (crossover < 1) throw new IllegalArgumentException("The crossover size must be positive, was " + crossover);
+        this.crossover = crossover;
+    }
+
+
+    /**
+     * Computes c = a * b. Square matrices of any size work, they are padded with zeros up to a size which can be
+     * halved all the way down to the crossover. Other shapes are multiplied with TiledGemm.
+     * @param a n x n matrix
+     * @param b n x n matrix
+     * @param c n x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public void multiply(Matrix a, Matrix b, Matrix c) {
+        int n = a.rows;
+        if (a.cols != n || b.rows != n || b.cols != n || c.rows != n || c.cols != n || n <= crossover) {
+            tiled.multiply(a, b, c);
+            return;
+        }
+
+        int size = n, levels = 0;
+        while (size > crossover) {
+            size = (size + 1) / 2;
+            levels++;
+        }
+        int padded = size << levels;
+
+        if (padded == n) {
+            WorkerPool.invoke(new Product(a, b, c));
+            return;
+        }
+        Matrix pa = take(padded), pb = take(padded), pc = take(padded);
+        pa.clear();                     // the padding must be zeros, pc is overwritten
+        pb.clear();
+        copy(a, pa.view(0, 0, n, n));
+        copy(b, pb.view(0, 0, n, n));
+        WorkerPool.invoke(new Product(pa, pb, pc));
+        copy(pc.view(0, 0, n, n), c);
+        give(pa);
+        give(pb);
+        give(pc);
+    }
+
+
+    /**
+     * Computes c += a * b. The product is computed in a buffer of the pool and then added to c.
+     * @param a n x n matrix
+     * @param b n x n matrix
+     * @param c n x n matrix, the product is added to it. It must not share elements with a or b.
+     */
+    public void multiplyAdd(Matrix a, Matrix b, Matrix c) {
+        int n = a.rows;
+        if (a.cols != n || b.rows != n || b.cols != n || c.rows != n || c.cols != n || n <= crossover) {
+            tiled.multiplyAdd(a, b, c);
+            return;
+        }
+        Matrix product = take(n);
+        multiply(a, b, product);
+        add(c, product, c);
+        give(product);
+    }
+
+
+    /**
+     * Empties the pool of buffers, so the memory can be collected. The pool is not emptied by itself.
+     */
+    public void releaseBuffers() {
+        buffers.clear();
+    }
+
+
+    /**
+     * Computes c = a * b, for a size which can be halved down to the crossover.
+     */
+    private class Product extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Matrix a, b, c;
+
+        Product(Matrix a, Matrix b, Matrix c) {
+            this.a = a; this.b = b; this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            int n = a.rows;
+            if (n <= crossover) {
+                tiled.multiply(a, b, c);
+                return;
+            }
+            int h = n / 2;
+            Matrix a11 = a.view(0, 0, h, h), a12 = a.view(0, h, h, h), a21 = a.view(h, 0, h, h), a22 = a.view(h, h, h, h);
+            Matrix b11 = b.view(0, 0, h, h), b12 = b.view(0, h, h, h), b21 = b.view(h, 0, h, h), b22 = b.view(h, h, h, h);
+            Matrix c11 = c.view(0, 0, h, h), c12 = c.view(0, h, h, h), c21 = c.view(h, 0, h, h), c22 = c.view(h, h, h, h);
+
+            Matrix s1 = take(h), s2 = take(h), s3 = take(h), s4 = take(h);
+            Matrix t1 = take(h), t2 = take(h), t3 = take(h), t4 = take(h);
+            add(a21, a22, s1);              // S1 = A21 + A22
+            subtract(s1, a11, s2);          // S2 = S1 - A11
+            subtract(a11, a21, s3);         // S3 = A11 - A21
+            subtract(a12, s2, s4);          // S4 = A12 - S2
+            subtract(b12, b11, t1);         // T1 = B12 - B11
+            subtract(b22, t1, t2);          // T2 = B22 - T1
+            subtract(b22, b12, t3);         // T3 = B22 - B12
+            subtract(t2, b21, t4);          // T4 = T2 - B21
+
+            Matrix p1 = take(h), p2 = take(h), p3 = take(h), p4 = take(h), p5 = take(h), p6 = take(h), p7 = take(h);
+            ForkJoinTask.invokeAll(
+                    new Product(a11, b11, p1),
+                    new Product(a12, b21, p2),
+                    new Product(s4, b22, p3),
+                    new Product(a22, t4, p4),
+                    new Product(s1, t1, p5),
+                    new Product(s2, t2, p6),
+                    new Product(s3, t3, p7));
+
+            // U1 = P1 + P2 is C11, U2 = P1 + P6, U3 = U2 + P7, U4 = U2 + P5, and then C12 = U4 + P3, C21 = U3 - P4, C22 = U3 + P5
+            add(p1, p2, c11);
+            add(p1, p6, p1);                // U2
+            add(p1, p7, p7);                // U3
+            add(p1, p5, p1);                // U4
+            add(p1, p3, c12);
+            subtract(p7, p4, c21);
+            add(p7, p5, c22);
+
+            for (Matrix m : new Matrix[] {s1, s2, s3, s4, t1, t2, t3, t4, p1, p2, p3, p4, p5, p6, p7}) give(m);
+        }
+    }
+
+
+    private Matrix take(int h) {
+        double[] data = buffers.computeIfAbsent(h * h, size -> new ArrayBlockingQueue<>(MAX_BUFFERS)).poll();
+        return Matrix.wrap((data == null) ? new double[h * h] : data, h, h);
+    }
+
+
+    /**
+     * Gives a buffer from take back to the pool, or to the GC if the pool has MAX_BUFFERS of its size.
+     */
+    private void give(Matrix m) {
+        buffers.get(m.data.length).offer(m.data);
+    }
+
+
+    /**
+     * out = x + y, where out may be x or y
+     */
+    private static void add(Matrix x, Matrix y, Matrix out) {
+        for (int i = 0; i < out.rows; i++) {
+            int xi = x.offset + i * x.stride, yi = y.offset + i * y.stride, oi = out.offset + i * out.stride;
+            for (int j = 0; j < out.cols; j++) out.data[oi + j] = x.data[xi + j] + y.data[yi + j];
+        }
+    }
+
+
+    /**
+     * out = x - y, where out may be x or y
+     */
+    private static void subtract(Matrix x, Matrix y, Matrix out) {
+        for (int i = 0; i < out.rows; i++) {
+            int xi = x.offset + i * x.stride, yi = y.offset + i * y.stride, oi = out.offset + i * out.stride;
+            for (int j = 0; j < out.cols; j++) out.data[oi + j] = x.data[xi + j] - y.data[yi + j];
+        }
+    }
+
+
+    private static void copy(Matrix from, Matrix to) {
+        for (int i = 0; i < from.rows; i++) {
+            System.arraycopy(from.data, from.offset + i * from.stride, to.data, to.offset + i * to.stride, from.cols);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache-blocked matrix multiplication, C = A * B, in the way of GotoBLAS/BLIS.
+ *
+ * The naive loops stream all of B through the cache once for every row of A, so for large matrices they wait on
+ * memory most of the time. Here the work is cut into blocks that fit in the caches and are reused while they are there:
+ *
+ * - C is cut into tiles of mc x nc, which are shared out between the threads (the parallel work is 2D).
+ * - For a tile, the depth K is walked kc at a time. The kc x nc panel of B and the mc x kc block of A are copied
+ *   ("packed") into small arrays, in exactly the order the micro-kernel reads them. The packed A block (mc * kc)
+ *   is meant to stay in L2, and an nr column sliver of the B panel (kc * nr) in L1.
+ * - The micro-kernel (GemmKernel) computes a 4 x nr piece of C, holding the sums in registers over the whole
+ *   depth kc, so each element of A and B it loads is used several times instead of once. nr is 4 for the plain
+ *   kernel, and the number of lanes of a vector for the Vector API kernel.
+ *
+ * Matrices of any size work: the packed blocks are padded with zeros up to whole 4 x nr pieces, and only the real
+ * part of a piece is written to C.
+ *
+ * Either operand may be used transposed (multiply(a, transposeA, b, transposeB, c)) without being copied: the
+ * packing reads element (i, j) of a matrix at i * stride + j, or at j * stride + i for its transpose, so only the
+ * steps of the packing loops change, and the micro-kernel sees the same packed blocks.
+ *
+ * When many products have the same B, B can be packed once with pack(..), all panels of it in the order the
+ * micro-kernel reads them, and the products with the PackedMatrix then only pack A.
+ */
+public class TiledGemm {
+    private static final int MR = GemmKernel.MR;
+
+    public static final int DEFAULT_MC = 128;   // rows of A in a packed block: 128 * 256 doubles = 256 KB, L2
+    public static final int DEFAULT_KC = 256;   // depth of a block: a 256 x 4 sliver of B is 8 KB, L1
+    public static final int DEFAULT_NC = 1024;  // columns of B in a packed panel
+
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final GemmKernel kernel = GemmKernel.INSTANCE;
+    private final int mc, kc, nc, nr;           // the micro-kernel computes MR x nr elements of C
+
+
+    public TiledGemm() {
+        this(DEFAULT_MC, DEFAULT_KC, DEFAULT_NC);
+    }
+
+
+    /**
+     * @param mc number of rows of A packed at a time, should make mc * kc doubles fit in L2
+     * @param kc depth of the blocks, should make kc * 4 doubles fit in L1
+     * @param nc number of columns of B packed at a time
+     */
+    public TiledGemm(int mc, int kc, int nc) {
+        if (mc < 1 || kc < 1 || nc < 1) throw new IllegalArgumentException("Block sizes must be positive");
+        nr = kernel.nr();
+        this.mc = roundUp(mc, MR);
+        this.kc = kc;
+        this.nc = roundUp(nc, nr);
+    }
+
+
+    /**
+     * Computes c = a * b with all the threads of the WorkerPool.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public void multiply(Matrix a, Matrix b, Matrix c) {
+        checkShapes(a, b, c);
+        multiply(a, false, b, false, null, c, false);
+    }
+
+
+    /**
+     * Computes c = op(a) * op(b) with all the threads of the WorkerPool, where op(x) is x transposed or not.
+     * @param a m x k matrix, or k x m if transposeA
+     * @param transposeA true to use a transposed
+     * @param b k x n matrix, or n x k if transposeB
+     * @param transposeB true to use b transposed
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public void multiply(Matrix a, boolean transposeA, Matrix b, boolean transposeB, Matrix c) {
+        checkShapes(a, transposeA, b, transposeB, c);
+        multiply(a, transposeA, b, transposeB, null, c, false);
+    }
+
+
+    /**
+     * Computes c += a * b with all the threads of the WorkerPool.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, the product is added to it. It must not share elements with a or b.
+     */
+    public void multiplyAdd(Matrix a, Matrix b, Matrix c) {
+        checkShapes(a, b, c);
+        multiply(a, false, b, false, null, c, true);
+    }
+
+
+    /**
+     * Computes c = a * b with all the threads of the WorkerPool, for a b packed by this TiledGemm (or one with the
+     * same kc and nr), without packing b again.
+     * @param a m x k matrix
+     * @param b k x n matrix, packed
+     * @param c m x n matrix, receives the product. It must not share elements with a.
+     */
+    public void multiply(Matrix a, PackedMatrix b, Matrix c) {
+        checkPacking(b);
+        checkShapes(a, b.source, c);
+        multiply(a, false, b.source, false, b, c, false);
+    }
+
+
+    private void multiply(Matrix a, boolean transposeA, Matrix b, boolean transposeB, PackedMatrix packed,
+                          Matrix c, boolean accumulate) {
+        int m = c.rows, n = c.cols;
+        if (m == 0 || n == 0) return;
+
+        // Make the tiles smaller when there are too few of them to keep all threads busy
+        int threads = WorkerPool.getParallelism();
+        int tileRows = Math.min(mc, roundUp(m, MR)), tileCols = Math.min(nc, roundUp(n, nr));
+        while (tiles(m, tileRows) * tiles(n, tileCols) < 2 * threads) {
+            if (tileCols >= 2 * tileRows && tileCols > 4 * nr) tileCols = roundUp(tileCols / 2, nr);
+            else if (tileRows > 4 * MR) tileRows = roundUp(tileRows / 2, MR);
+            else break;
+        }
+
+        int nrOfTiles = tiles(m, tileRows) * tiles(n, tileCols);
+        AtomicInteger nextTile = new AtomicInteger();
+        TileWorker[] workers = new TileWorker[Math.min(threads, nrOfTiles)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new TileWorker(a, transposeA, b, transposeB, packed, c, accumulate, tileRows, tileCols, nextTile);
+        }
+        WorkerPool.invokeAll(workers);
+    }
+
+
+    /**
+     * Computes c = a * b on the calling thread only, for products too small to be worth sharing out.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, receives the product. It must not share elements with a or b.
+     */
+    public void multiplySequential(Matrix a, Matrix b, Matrix c) {
+        checkShapes(a, b, c);
+        multiplySequential(a, false, b, false, null, c, false);
+    }
+
+
+    /**
+     * Computes c = op(a) * op(b) on the calling thread only, see multiply(Matrix, boolean, Matrix, boolean, Matrix).
+     */
+    public void multiplySequential(Matrix a, boolean transposeA, Matrix b, boolean transposeB, Matrix c) {
+        checkShapes(a, transposeA, b, transposeB, c);
+        multiplySequential(a, transposeA, b, transposeB, null, c, false);
+    }
+
+
+    /**
+     * Computes c += a * b on the calling thread only.
+     * @param a m x k matrix
+     * @param b k x n matrix
+     * @param c m x n matrix, the product is added to it. It must not share elements with a or b.
+     */
+    public void multiplyAddSequential(Matrix a, Matrix b, Matrix c) {
+        checkShapes(a, b, c);
+        multiplySequential(a, false, b, false, null, c, true);
+    }
+
+
+    /**
+     * Computes c = a * b on the calling thread only, for a b packed by this TiledGemm.
+     * @param a m x k matrix
+     * @param b k x n matrix, packed
+     * @param c m x n matrix, receives the product. It must not share elements with a.
+     */
+    public void multiplySequential(Matrix a, PackedMatrix b, Matrix c) {
+        checkPacking(b);
+        checkShapes(a, b.source, c);
+        multiplySequential(a, false, b.source, false, b, c, false);
+    }
+
+
+    private void multiplySequential(Matrix a, boolean transposeA, Matrix b, boolean transposeB, PackedMatrix packed,
+                                    Matrix c, boolean accumulate) {
+        if (c.rows == 0 || c.cols == 0) return;
+        int tileRows = Math.min(mc, roundUp(c.rows, MR)), tileCols = Math.min(nc, roundUp(c.cols, nr));
+        new TileWorker(a, transposeA, b, transposeB, packed, c, accumulate, tileRows, tileCols, new AtomicInteger()).run();
+    }
+
+
+    /**
+     * Packs all of b, for multiply(Matrix, PackedMatrix, Matrix). The depth is cut in blocks of kc, and every
+     * block is packed as the slivers of nr columns TileWorker would pack, one after another over all the columns,
+     * so any tile of any block is one contiguous piece of the packed data.
+     * @param b k x n matrix. The packed copy does not follow later changes to it.
+     * @return b packed
+     */
+    public PackedMatrix pack(Matrix b) {
+        int width = roundUp(b.cols, nr);
+        double[] data = new double[Math.multiplyExact(b.rows, width)];
+        for (int p0 = 0; p0 < b.rows; p0 += kc) {
+            int depth = Math.min(kc, b.rows - p0);
+            packPanel(b, b.stride, 1, p0, 0, depth, b.cols, nr, data, p0 * width);
+        }
+        return new PackedMatrix(b, data, kc, nr);
+    }
+
+
+    /**
+     * Estimates the bytes a product moves between the memory and the caches, if none of the operands stays in the
+     * last level cache from one block to the next: A is read once for every column of tiles of C, B once for
+     * every row of tiles, and C is read and written once for every block of depth.
+     * @return the bytes for an m x k by k x n product of doubles
+     */
+    public long bytesMoved(int m, int k, int n) {
+        return bytesMoved(mc, kc, nc, m, k, n, 8, 8);
+    }
+
+
+    /**
+     * @param operandBytes bytes of an element of A and B
+     * @param resultBytes bytes of an element of C
+     * @return the bytes moved with blocks of mc x kc and kc x nc, as in bytesMoved(m, k, n)
+     */
+    static long bytesMoved(int mc, int kc, int nc, int m, int k, int n, int operandBytes, int resultBytes) {
+        return (long) operandBytes * m * k * tiles(n, nc) + (long) operandBytes * k * n * tiles(m, mc)
+                + 2L * resultBytes * m * n * Math.max(1, tiles(k, kc));
+    }
+
+
+    private void checkPacking(PackedMatrix b) {
+        if (b.kc != kc || b.nr != nr)
+            throw new IllegalArgumentException(String.format("B was packed with kc = %d and nr = %d, not %d and %d", b.kc, b.nr, kc, nr));
+    }
+
+
+    /**
+     * Packs b[p0, p0 + depth) x [j0, j0 + cols) as slivers of nr columns from to[pos]: for every p the nr elements
+     * of row p, padded with zeros after the last column. Element (p, j) is read at b.offset + p * rowStep + j * colStep,
+     * so (stride, 1) packs b and (1, stride) packs its transpose.
+     */
+    private static void packPanel(Matrix b, int rowStep, int colStep, int p0, int j0, int depth, int cols, int nr,
+                                  double[] to, int pos) {
+        double[] bd = b.data;
+        for (int jr = 0; jr < cols; jr += nr) {
+            int width = Math.min(nr, cols - jr);
+            int row = b.offset + p0 * rowStep + (j0 + jr) * colStep;
+            for (int p = 0; p < depth; p++, row += rowStep) {
+                for (int j = 0; j < width; j++) to[pos + j] = bd[row + j * colStep];
+                for (int j = width; j < nr; j++) to[pos + j] = 0;
+                pos += nr;
+            }
+        }
+    }
+
+
+    static void checkShapes(Matrix a, Matrix b, Matrix c) {
+        checkShapes(a, false, b, false, c);
+    }
+
+
+    static void checkShapes(Matrix a, boolean transposeA, Matrix b, boolean transposeB, Matrix c) {
+        int m = transposeA ? a.cols : a.rows, k = transposeA ? a.rows : a.cols;
+        int bRows = transposeB ? b.cols : b.rows, n = transposeB ? b.rows : b.cols;
+        if (k != bRows || c.rows != m || c.cols != n)
+            throw new IllegalArgumentException(String.format("Can't multiply %d x %d%s by %d x %d%s into %d x %d",
+                    a.rows, a.cols, transposeA ? " transposed" : "", b.rows, b.cols, transposeB ? " transposed" : "", c.rows, c.cols));
+    }
+
+
+    static int tiles(int length, int tileLength) {
+        return (length + tileLength - 1) / tileLength;
+    }
+
+
+    static int roundUp(int x, int multiple) {
+        return (x + multiple - 1) / multiple * multiple;
+    }
+
+
+    /**
+     * The packing buffers of a thread, kept from one multiplication to the next and grown when they are too small,
+     * so many small products in a row don't allocate anything.
+     */
+    private static final class Workspace {
+        double[] packedA = new double[0], packedB = new double[0], edge = new double[0];
+
+        double[] grow(double[] buffer, int size) {
+            return (buffer.length >= size) ? buffer : new double[size];
+        }
+    }
+
+
+    /**
+     * Takes tiles of C one after another until there are none left, with the packing buffers of its thread.
+     * With a prepacked B, its panels are read where they are, and only A is packed. With accumulate, the tiles of C
+     * are added to instead of cleared first. A transposed operand is packed with its steps swapped.
+     */
+    private class TileWorker implements Runnable {
+        final Matrix a, b, c;
+        final PackedMatrix prepacked;
+        final boolean accumulate;
+        final int aRowStep, aColStep, bRowStep, bColStep;  // element (i, j) of op(x) is at x.offset + i * rowStep + j * colStep
+        final int k;                                        // the depth, columns of op(a)
+        final int tileRows, tileCols;
+        final AtomicInteger nextTile;
+        double[] packedA, packedB, edge;
+
+        TileWorker(Matrix a, boolean transposeA, Matrix b, boolean transposeB, PackedMatrix prepacked, Matrix c,
+                   boolean accumulate, int tileRows, int tileCols, AtomicInteger nextTile) {
+            this.a = a; this.b = b; this.c = c;
+            aRowStep = transposeA ? 1 : a.stride;
+            aColStep = transposeA ? a.stride : 1;
+            bRowStep = transposeB ? 1 : b.stride;
+            bColStep = transposeB ? b.stride : 1;
+            k = transposeA ? a.rows : a.cols;
+            this.prepacked = prepacked;
+            this.accumulate = accumulate;
+            this.tileRows = tileRows;
+            this.tileCols = tileCols;
+            this.nextTile = nextTile;
+        }
+
+        @Override
+        public void run() {
+            Workspace workspace = WORKSPACE.get();
+            int depth = Math.min(kc, k);
+            packedA = workspace.packedA = workspace.grow(workspace.packedA, tileRows * depth);
+            if (prepacked == null) packedB = workspace.packedB = workspace.grow(workspace.packedB, depth * tileCols);
+            edge = workspace.edge = workspace.grow(workspace.edge, MR * nr);
+
+            int colTiles = tiles(c.cols, tileCols);
+            int nrOfTiles = tiles(c.rows, tileRows) * colTiles;
+            int tile;
+            while ((tile = nextTile.getAndIncrement()) < nrOfTiles) {
+                int i0 = (tile / colTiles) * tileRows, j0 = (tile % colTiles) * tileCols;
+                multiplyTile(i0, j0, Math.min(tileRows, c.rows - i0), Math.min(tileCols, c.cols - j0));
+            }
+        }
+
+        private void multiplyTile(int i0, int j0, int rows, int cols) {
+            if (!accumulate) c.view(i0, j0, rows, cols).clear();
+            for (int p0 = 0; p0 < k; p0 += kc) {
+                int depth = Math.min(kc, k - p0);
+                double[] panel = packedB;
+                int bi = 0;
+                if (prepacked == null) packPanel(b, bRowStep, bColStep, p0, j0, depth, cols, nr, packedB, 0);
+                else {
+                    panel = prepacked.data;
+                    bi = p0 * prepacked.width + j0 * depth;
+                }
+                packA(i0, p0, rows, depth);
+
+                for (int jr = 0; jr < cols; jr += nr) {
+                    for (int ir = 0; ir < rows; ir += MR) {
+                        int cIndex = c.offset + (i0 + ir) * c.stride + j0 + jr;
+                        kernel.multiplyAdd(depth, packedA, ir * depth, panel, bi + jr * depth,
+                                c.data, cIndex, c.stride, Math.min(MR, rows - ir), Math.min(nr, cols - jr), edge);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Packs a[i0, i0 + rows) x [p0, p0 + depth) as slivers of MR rows: for every p the MR elements of column p.
+         */
+        private void packA(int i0, int p0, int rows, int depth) {
+            double[] ad = a.data;
+            int pos = 0;
+            for (int ir = 0; ir < rows; ir += MR) {
+                int height = Math.min(MR, rows - ir);
+                int row = a.offset + (i0 + ir) * aRowStep + p0 * aColStep;
+                for (int p = 0; p < depth; p++, row += aColStep) {
+                    for (int r = 0; r < height; r++) packedA[pos + r] = ad[row + r * aRowStep];
+                    for (int r = height; r < MR; r++) packedA[pos + r] = 0;
+                    pos += MR;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A matrix on disk, stored as square tiles, for matrices too large for the heap (see OutOfCoreGemm).
+ *
+ * In a MatrixFile the elements of a block are spread over as many places in the file as the block has rows. Here
+ * the matrix is cut into tiles of tileSize x tileSize, and every tile is stored in one piece, row by row, so a
+ * tile is read or written with one copy. The tiles follow each other row of tiles by row of tiles, and the tiles
+ * at the right and bottom edges are padded with zeros to the full size, so tile (ti, tj) is always at the same
+ * place. The file is a header of HEADER_BYTES: the ints MAGIC, VERSION, rows, columns and tileSize, and a spare
+ * int, followed by the tiles, as 8-byte doubles. Everything is little-endian.
+ *
+ * An open file is mapped in segments of whole tiles, of at most MatrixFile.SEGMENT_BYTES (or one tile), which
+ * stay mapped until the file is closed. The mapped memory is the page cache of the file, not the heap: the
+ * operating system reads the tiles as they are used and drops the ones not used for a while.
+ */
+public final class TiledMatrixFile implements Closeable {
+    static final int MAGIC = 0x454C4954;                // "TILE" in a little-endian file
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    final int rows, cols, tileSize;
+    final int tileRows, tileCols;                       // number of tiles down and across
+    private final FileChannel channel;
+    private final boolean writable;
+    private final int tilesPerSegment;
+    private final MappedByteBuffer[] segments;
+    private final DoubleBuffer[] doubles;
+
+
+    private TiledMatrixFile(FileChannel channel, boolean writable, int rows, int cols, int tileSize) throws IOException {
+        this.channel = channel;
+        this.writable = writable;
+        this.rows = rows;
+        this.cols = cols;
+        this.tileSize = tileSize;
+        tileRows = (rows + tileSize - 1) / tileSize;
+        tileCols = (cols + tileSize - 1) / tileSize;
+
+        long tiles = (long) tileRows * tileCols, tileBytes = tileBytes(tileSize);
+        tilesPerSegment = (int) Math.max(1, MatrixFile.SEGMENT_BYTES / tileBytes);
+        int nrOfSegments = (int) ((tiles + tilesPerSegment - 1) / tilesPerSegment);
+        segments = new MappedByteBuffer[nrOfSegments];
+        doubles = new DoubleBuffer[nrOfSegments];
+        for (int s = 0; s < nrOfSegments; s++) {
+            long first = (long) s * tilesPerSegment, count = Math.min(tilesPerSegment, tiles - first);
+            segments[s] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + first * tileBytes, count * tileBytes);
+            doubles[s] = segments[s].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+    }
+
+
+    /**
+     * Creates a file of a matrix of zeros, open for reading and writing.
+     * @param file the file, replaced if it exists
+     * @param tileSize number of rows and columns of a tile, at most 16383 so a tile can be mapped
+     * @throws IOException if the file can't be written
+     */
+    public static TiledMatrixFile create(Path file, int rows, int cols, int tileSize) throws IOException {
+        if (rows < 0 || cols < 0) throw new IllegalArgumentException(String.format("Can't make a %d x %d matrix", rows, cols));
+        if (tileSize < 1 || tileBytes(tileSize) > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Tiles of " + tileSize + " x " + tileSize + " can't be mapped");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols).putInt(tileSize).putInt(0).flip();
+            while (header.hasRemaining()) channel.write(header);
+            long size = size(rows, cols, tileSize);
+            if (size > HEADER_BYTES) channel.write(ByteBuffer.allocate(1), size - 1);
+            return new TiledMatrixFile(channel, true, rows, cols, tileSize);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Opens a file made by create(..), for reading only.
+     * @throws IOException if the file can't be read, or is not a tiled matrix file
+     */
+    public static TiledMatrixFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+                throw new IOException(file + " is not a tiled matrix file");
+            int version = header.getInt(), rows = header.getInt(), cols = header.getInt(), tileSize = header.getInt();
+            if (version != VERSION) throw new IOException(file + " has version " + version + ", not " + VERSION);
+            if (rows < 0 || cols < 0 || tileSize < 1 || tileBytes(tileSize) > Integer.MAX_VALUE
+                    || channel.size() != size(rows, cols, tileSize))
+                throw new IOException(file + " is " + channel.size() + " bytes long, which does not fit a " + rows + " x "
+                        + cols + " matrix in tiles of " + tileSize);
+            return new TiledMatrixFile(channel, false, rows, cols, tileSize);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * @param file the file, replaced if it exists
+     * @param m the matrix (or view) to write
+     * @param tileSize number of rows and columns of a tile
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path file, Matrix m, int tileSize) throws IOException {
+        try (TiledMatrixFile tiled = create(file, m.rows, m.cols, tileSize)) {
+            tiled.transfer(0, 0, tiled.tileRows, tiled.tileCols, m, true);
+        }
+    }
+
+
+    /**
+     * @param file a file made by create(..) or write(..)
+     * @return a new matrix with the elements of the file
+     * @throws IOException if the file can't be read, or is not a tiled matrix file
+     */
+    public static Matrix read(Path file) throws IOException {
+        try (TiledMatrixFile tiled = open(file)) {
+            Matrix m = new Matrix(tiled.rows, tiled.cols);
+            tiled.transfer(0, 0, tiled.tileRows, tiled.tileCols, m, false);
+            return m;
+        }
+    }
+
+
+    /**
+     * Converts a MatrixFile to a tiled file, a band of tileSize rows at a time, without loading the matrix.
+     * @param from a file written by MatrixFile.write(..)
+     * @param to the tiled file, replaced if it exists
+     * @param tileSize number of rows and columns of a tile
+     * @throws IOException if a file can't be read or written, or from is not a matrix file
+     */
+    public static void fromMatrixFile(Path from, Path to, int tileSize) throws IOException {
+        try (FileChannel source = FileChannel.open(from, StandardOpenOption.READ)) {
+            int[] shape = MatrixFile.readHeader(source, from);
+            try (TiledMatrixFile tiled = create(to, shape[0], shape[1], tileSize)) {
+                tiled.copyBands(source, false);
+            }
+        }
+    }
+
+
+    /**
+     * Converts a tiled file to a MatrixFile, a band of tileSize rows at a time, without loading the matrix.
+     * @param from a tiled file
+     * @param to the MatrixFile, replaced if it exists
+     * @throws IOException if a file can't be read or written, or from is not a tiled matrix file
+     */
+    public static void toMatrixFile(Path from, Path to) throws IOException {
+        try (TiledMatrixFile tiled = open(from);
+             FileChannel target = FileChannel.open(to, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MatrixFile.writeHeader(target, tiled.rows, tiled.cols);
+            tiled.copyBands(target, true);
+        }
+    }
+
+
+    public int rows() { return rows; }
+
+    public int cols() { return cols; }
+
+    public int tileSize() { return tileSize; }
+
+
+    /**
+     * Copies the tiles [ti, ti + count) x [tj, tj + count) to m, or from m if write, by all the threads of the
+     * WorkerPool. Element (i, j) of the tiles is element (i, j) of m, and m has the same size as the tiles, or
+     * the part of them inside the matrix, or anything in between.
+     */
+    void transfer(int ti, int tj, int countRows, int countCols, Matrix m, boolean write) throws IOException {
+        int rows = Math.min(countRows * tileSize, this.rows - ti * tileSize);
+        int cols = Math.min(countCols * tileSize, this.cols - tj * tileSize);
+        if (m.rows < rows || m.cols < cols || m.rows > countRows * tileSize || m.cols > countCols * tileSize)
+            throw new IllegalArgumentException(String.format("Can't copy %d x %d tiles of %d to a %d x %d matrix",
+                    countRows, countCols, tileSize, m.rows, m.cols));
+        if (write && !writable) throw new IOException("The file is open for reading only");
+
+        int tiles = countRows * countCols;
+        if (tiles == 0) return;
+        int threads = Math.max(1, Math.min(WorkerPool.getParallelism(), tiles));
+        AtomicInteger nextTile = new AtomicInteger();
+        TileWorker[] workers = new TileWorker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new TileWorker(ti, tj, countCols, tiles, m, write, nextTile);
+        if (threads == 1) workers[0].run();
+        else WorkerPool.invokeAll(workers);
+    }
+
+
+    /**
+     * Copies between this file and a MatrixFile of the same matrix, by all the threads of the WorkerPool. The
+     * threads take rows of tiles one after another, map the band of the MatrixFile with the same rows, and copy
+     * the rows of every tile straight between the two mappings.
+     */
+    private void copyBands(FileChannel rowMajor, boolean toRowMajor) throws IOException {
+        if (rows == 0 || cols == 0) return;
+        if (8L * tileSize * cols > Integer.MAX_VALUE)
+            throw new IOException("Bands of " + tileSize + " rows of " + cols + " columns are too long to map");
+        if (!toRowMajor && !writable) throw new IOException("The file is open for reading only");
+
+        int threads = Math.max(1, Math.min(WorkerPool.getParallelism(), tileRows));
+        AtomicInteger nextBand = new AtomicInteger();
+        BandWorker[] workers = new BandWorker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new BandWorker(rowMajor, toRowMajor, nextBand);
+        try {
+            if (threads == 1) workers[0].run();
+            else WorkerPool.invokeAll(workers);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * Writes the changes to the disk, if the file is open for writing, and closes it. The segments are unmapped
+     * when they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writable) for (MappedByteBuffer segment : segments) segment.force();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+
+    private static long tileBytes(int tileSize) {
+        return 8L * tileSize * tileSize;
+    }
+
+
+    private static long size(int rows, int cols, int tileSize) {
+        long tiles = (long) ((rows + tileSize - 1) / tileSize) * ((cols + tileSize - 1) / tileSize);
+        return HEADER_BYTES + tiles * tileBytes(tileSize);
+    }
+
+
+    /**
+     * @return the mapped doubles which hold tile number index (counting row of tiles by row of tiles)
+     */
+    private DoubleBuffer segment(long index) {
+        return doubles[(int) (index / tilesPerSegment)];
+    }
+
+
+    /**
+     * @return where tile number index starts in its segment
+     */
+    private int start(long index) {
+        return (int) (index % tilesPerSegment) * tileSize * tileSize;
+    }
+
+
+    /**
+     * Takes tiles one after another until there are none left, and copies the rows of each between its segment
+     * and m. The copies use absolute positions, so the workers can share the buffers of the segments.
+     */
+    private class TileWorker implements Runnable {
+        final int ti, tj, countCols, tiles;
+        final Matrix m;
+        final boolean write;
+        final AtomicInteger nextTile;
+
+        TileWorker(int ti, int tj, int countCols, int tiles, Matrix m, boolean write, AtomicInteger nextTile) {
+            this.ti = ti;
+            this.tj = tj;
+            this.countCols = countCols;
+            this.tiles = tiles;
+            this.m = m;
+            this.write = write;
+            this.nextTile = nextTile;
+        }
+
+        @Override
+        public void run() {
+            int tile;
+            while ((tile = nextTile.getAndIncrement()) < tiles) {
+                int r = tile / countCols, c = tile % countCols;
+                long index = (long) (ti + r) * tileCols + tj + c;
+                DoubleBuffer segment = segment(index);
+                int start = start(index);
+                int i0 = r * tileSize, j0 = c * tileSize;
+                int height = Math.min(tileSize, m.rows - i0), width = Math.min(tileSize, m.cols - j0);
+                for (int i = 0; i < height; i++) {
+                    int pos = m.offset + (i0 + i) * m.stride + j0;
+                    if (write) segment.put(start + i * tileSize, m.data, pos, width);
+                    else segment.get(start + i * tileSize, m.data, pos, width);
+                }
+            }
+        }
+    }
+
+
+    private class BandWorker implements Runnable {
+        final FileChannel rowMajor;
+        final boolean toRowMajor;
+        final AtomicInteger nextBand;
+
+        BandWorker(FileChannel rowMajor, boolean toRowMajor, AtomicInteger nextBand) {
+            this.rowMajor = rowMajor;
+            this.toRowMajor = toRowMajor;
+            this.nextBand = nextBand;
+        }
+
+        @Override
+        public void run() {
+            int band;
+            while ((band = nextBand.getAndIncrement()) < tileRows) {
+                int i0 = band * tileSize, height = Math.min(tileSize, rows - i0);
+                DoubleBuffer matrix;
+                try {
+                    matrix = rowMajor.map(toRowMajor ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                            MatrixFile.HEADER_BYTES + 8L * i0 * cols, 8L * height * cols).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (int tj = 0; tj < tileCols; tj++) {
+                    long index = (long) band * tileCols + tj;
+                    DoubleBuffer segment = segment(index);
+                    int start = start(index), j0 = tj * tileSize, width = Math.min(tileSize, cols - j0);
+                    for (int i = 0; i < height; i++) {
+                        if (toRowMajor) matrix.put(i * cols + j0, segment, start + i * tileSize, width);
+                        else segment.put(start + i * tileSize, matrix, i * cols + j0, width);
+                    }
+                }
+            }
+        }
+    }
+}
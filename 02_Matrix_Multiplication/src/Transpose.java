@@ -0,0 +1,155 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache-blocked, parallel matrix transposition.
+ *
+ * Transposing element by element reads one matrix along its rows and writes the other along its columns, so
+ * every write lands on a new cache line, and for large matrices on a new page. Here the matrices are walked in
+ * BLOCK x BLOCK blocks instead: a block of the source and the block of the target it goes to both fit in L1,
+ * so each cache line is loaded once and used for all of its elements.
+ *
+ * The blocks are shared out between the threads by bands of BLOCK rows of the source, which the threads claim
+ * one after another. Matrices of fewer than PARALLEL_MIN elements are transposed on the calling thread.
+ */
+public final class Transpose {
+    static final int BLOCK = 32;                        // two 32 x 32 blocks of doubles are 16 KB
+    private static final int PARALLEL_MIN = 1 << 16;    // matrices with fewer elements are transposed by one thread
+
+    private Transpose() {}
+
+
+    /**
+     * @param m the matrix to transpose
+     * @return a new matrix, where element (i, j) is element (j, i) of m
+     */
+    public static Matrix transpose(Matrix m) {
+        Matrix t = new Matrix(m.cols, m.rows);
+        transpose(m, t);
+        return t;
+    }
+
+
+    /**
+     * Writes the transpose of from into to, with all the threads of the WorkerPool.
+     * @param from rows x cols matrix
+     * @param to cols x rows matrix. It must not share elements with from, see transposeInPlace(..) for that.
+     */
+    public static void transpose(Matrix from, Matrix to) {
+        if (to.rows != from.cols || to.cols != from.rows)
+            throw new IllegalArgumentException(String.format("Can't transpose %d x %d into %d x %d",
+                    from.rows, from.cols, to.rows, to.cols));
+        run(new Worker(from, to, bands(from.rows), new AtomicInteger()), (long) from.rows * from.cols, bands(from.rows));
+    }
+
+
+    /**
+     * Transposes a square matrix in place, with all the threads of the WorkerPool: every block above the diagonal
+     * is swapped with its mirror below it, and the blocks on the diagonal are transposed within themselves.
+     * @param m n x n matrix (or view)
+     */
+    public static void transposeInPlace(Matrix m) {
+        if (m.rows != m.cols) throw new IllegalArgumentException("Only square matrices can be transposed in place, not " + m.rows + " x " + m.cols);
+        run(new Worker(m, m, bands(m.rows), new AtomicInteger()), (long) m.rows * m.cols, bands(m.rows));
+    }
+
+
+    /**
+     * Writes the transpose of from into to, block by block on the calling thread.
+     */
+    static void transposeSequential(Matrix from, Matrix to) {
+        new Worker(from, to, bands(from.rows), new AtomicInteger()).run();
+    }
+
+
+    private static void run(Worker first, long elements, int bands) {
+        int threads = (elements < PARALLEL_MIN) ? 1 : Math.min(WorkerPool.getParallelism(), bands);
+        if (threads <= 1) {
+            first.run();
+            return;
+        }
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new Worker(first.from, first.to, bands, first.nextBand);
+        WorkerPool.invokeAll(workers);
+    }
+
+
+    private static int bands(int rows) {
+        return (rows + BLOCK - 1) / BLOCK;
+    }
+
+
+    /**
+     * Takes bands of BLOCK rows of from one after another until there are none left, and transposes their blocks.
+     * When from and to are the same square matrix, a band only does its blocks on and above the diagonal, each
+     * together with its mirror, so every pair is swapped once.
+     */
+    private static class Worker implements Runnable {
+        final Matrix from, to;
+        final int nrOfBands;
+        final AtomicInteger nextBand;
+
+        Worker(Matrix from, Matrix to, int nrOfBands, AtomicInteger nextBand) {
+            this.from = from; this.to = to;
+            this.nrOfBands = nrOfBands;
+            this.nextBand = nextBand;
+        }
+
+        @Override
+        public void run() {
+            boolean inPlace = (from == to);
+            int band;
+            while ((band = nextBand.getAndIncrement()) < nrOfBands) {
+                int i0 = band * BLOCK, rows = Math.min(BLOCK, from.rows - i0);
+                for (int j0 = inPlace ? i0 : 0; j0 < from.cols; j0 += BLOCK) {
+                    int cols = Math.min(BLOCK, from.cols - j0);
+                    if (!inPlace) copyBlock(i0, j0, rows, cols);
+                    else if (i0 == j0) transposeDiagonalBlock(i0, rows);
+                    else swapBlocks(i0, j0, rows, cols);
+                }
+            }
+        }
+
+        /**
+         * to[j][i] = from[i][j] for the block of from at (i0, j0)
+         */
+        private void copyBlock(int i0, int j0, int rows, int cols) {
+            double[] f = from.data, t = to.data;
+            for (int i = i0; i < i0 + rows; i++) {
+                int fRow = from.offset + i * from.stride;
+                for (int j = j0; j < j0 + cols; j++) t[to.offset + j * to.stride + i] = f[fRow + j];
+            }
+        }
+
+        /**
+         * Swaps the block at (i0, j0) with the transpose of the block at (j0, i0)
+         */
+        private void swapBlocks(int i0, int j0, int rows, int cols) {
+            double[] d = from.data;
+            for (int i = i0; i < i0 + rows; i++) {
+                int row = from.offset + i * from.stride;
+                for (int j = j0; j < j0 + cols; j++) {
+                    int mirror = from.offset + j * from.stride + i;
+                    double x = d[row + j];
+                    d[row + j] = d[mirror];
+                    d[mirror] = x;
+                }
+            }
+        }
+
+        /**
+         * Transposes the size x size block at (i0, i0) within itself
+         */
+        private void transposeDiagonalBlock(int i0, int size) {
+            double[] d = from.data;
+            for (int i = i0; i < i0 + size; i++) {
+                int row = from.offset + i * from.stride;
+                for (int j = i + 1; j < i0 + size; j++) {
+                    int mirror = from.offset + j * from.stride + i;
+                    double x = d[row + j];
+                    d[row + j] = d[mirror];
+                    d[mirror] = x;
+                }
+            }
+        }
+    }
+}
@@ -1,155 +1,266 @@
-import java.util.concurrent.CyclicBarrier;
-
 public class Workers {
-    private final double[][] a, b, c;
-    private double[][] _a, _b;         // Transposed version of a and b
+    private final Matrix a, b;
+    private Matrix c;                  // result of runWorker(int), made on its first call
+    private Matrix _a, _b;             // Transposed version of a and b
+    private boolean cacheTransposed;   // keep _a and _b from one run to the next
+    private FloatMatrix fa, fb, fc;    // a and b rounded to float, and the float result (choices 6 and 7)
+    private final FloatGemm floatGemm = new FloatGemm();
+    private TiledGemm tiled = new TiledGemm();
+    private StrassenMultiply strassen = new StrassenMultiply();
+    private final int m, depth, n;      // a is m x depth, b is depth x n
     private final int nrThreads;
     private final int nrOfComponents;
-    private final CyclicBarrier cb;
 
 
-    public Workers(double[][] a, double[][] b){
+    /**
+     * @param a m x k matrix
+     * @param b k x n matrix
+     */
+    public Workers(Matrix a, Matrix b){
+        if (a.cols != b.rows)
+            throw new IllegalArgumentException(String.format("Can't multiply %d x %d by %d x %d", a.rows, a.cols, b.rows, b.cols));
         this.a = a;
         this.b = b;
-        this.c = new double[a.length][a.length];
-        int cores = Runtime.getRuntime().availableProcessors();
-        // Decide number of threads in a way that it is never assigned to zero, for instance when nr of cores < array length.
-        if (cores > a.length) {
+        this.m = a.rows;
+        this.depth = a.cols;
+        this.n = b.cols;
+        int cores = WorkerPool.getParallelism();
+        // Decide number of threads in a way that it is never assigned to zero, for instance when nr of cores < nr of rows.
+        if (cores > m) {
             nrOfComponents = 1;
-            if (a.length > 2) nrThreads = a.length;         // if array len > 2, then give each thread a row to handle
-            else nrThreads = 1;                             // else let only one thread take care of the 2 x 2 array
+            if (m > 2) nrThreads = m;                       // if nr of rows > 2, then give each thread a row to handle
+            else nrThreads = 1;                             // else let only one thread take care of the 1 or 2 rows
         }
-        else {                                              // nrOfCores < a.length
-            nrOfComponents = a.length / cores;
+        else {                                              // nrOfCores < m
+            nrOfComponents = m / cores;
             nrThreads = cores;
         }
-        cb = new CyclicBarrier(nrThreads + 1);
     }
 
 
 
+    /**
+     * Computes rows sRow, ..., eRow - 1 of the result, straight into those rows of out, which no other
+     * multiplier writes to.
+     */
     private class MatrixMultiplier implements Runnable{
-        double[][] d;
+        final Matrix out;
+        final boolean accumulate;       // add to out instead of overwriting it
         int sRow, eRow, id, choice;
-        MatrixMultiplier(int startRow, int endRow, int id, int choice){
-            d = new double[endRow - startRow + 1][a.length];
+        MatrixMultiplier(int startRow, int endRow, int id, int choice, Matrix out, boolean accumulate){
             sRow = startRow;
             eRow = endRow;
             this.id = id;
             this.choice = choice;
+            this.out = out;
+            this.accumulate = accumulate;
         }
         @Override
         public void run() {
             if (choice == 0) runClassicAlgorithm();
             else if (choice == 1) runTransposedA();
             else if (choice == 2) runTransposedB();
-
-            writeToGlobalArray();
-
-            try {cb.await();}
-            catch (Exception exception) {exception.printStackTrace();}
         }
 
         private void runClassicAlgorithm(){
             double sum;
-            // multiply each row of a, with all rows in rotated b
+            double[] ad = a.data, bd = b.data;
+            int aRow, bCol;
+            // multiply each row of a, with all columns of b
             for (int i = sRow; i < eRow; i++){
-                for (int j = 0;j < a.length; j++) {
+                aRow = a.offset + i * a.stride;
+                for (int j = 0;j < n; j++) {
                     sum = 0;
-                    for (int k = 0; k < a.length; k++){
-                        sum += a[i][k] * b[k][j];
+                    bCol = b.offset + j;
+                    for (int k = 0; k < depth; k++){
+                        sum += ad[aRow + k] * bd[bCol + k * b.stride];
                     }
-                    d[i-sRow][j] = sum;
+                    store(i, j, sum);
                 }
             }
         }
 
         private void runTransposedA(){
             double sum;
-            // multiply each row of a, with all rows in rotated b
+            double[] ad = _a.data, bd = b.data;
+            int bCol;
+            // multiply each column of rotated a, with all columns of b
             for (int i = sRow; i < eRow; i++){
-                for (int j = 0;j < a.length; j++) {
+                for (int j = 0;j < n; j++) {
                     sum = 0;
-                    for (int k = 0; k < a.length; k++){
-                        sum += _a[k][i] * b[k][j];
+                    bCol = b.offset + j;
+                    for (int k = 0; k < depth; k++){
+                        sum += ad[k * m + i] * bd[bCol + k * b.stride];
                     }
-                    d[i-sRow][j] = sum;
+                    store(i, j, sum);
                 }
             }
         }
 
         private void runTransposedB(){
-            double sum;
+            GemmKernel kernel = GemmKernel.INSTANCE;
+            double[] ad = a.data, bd = _b.data;
+            int aRow;
             // multiply each row of a, with all rows in rotated b
             for (int i = sRow; i < eRow; i++){
-                for (int j = 0;j < a.length; j++) {
-                    sum = 0;
-                    for (int k = 0; k < a.length; k++){
-                        sum += a[i][k] * _b[j][k];
-                    }
-                    d[i-sRow][j] = sum;
+                aRow = a.offset + i * a.stride;
+                for (int j = 0;j < n; j++) {
+                    store(i, j, kernel.dot(ad, aRow, bd, j * depth, depth));
                 }
             }
         }
 
-        private void writeToGlobalArray(){
-            for (int i = sRow; i < eRow; i++){
-                System.arraycopy(d[i - sRow], 0, c[i], 0, a.length);
-            }
+        private void store(int i, int j, double sum){
+            int index = out.offset + i * out.stride + j;
+            if (accumulate) out.data[index] += sum;
+            else out.data[index] = sum;
         }
     }
 
 
 
+    /**
+     * Keeps the transposed A or B (choices 1 and 2), and the float copies of A and B (choices 6 and 7), from one
+     * run to the next instead of making them again every time, for repeated multiplications of the same matrices.
+     * Call transposedChanged() after changing a or b.
+     * @param cache true to keep them
+     */
+    public void setCacheTransposed(boolean cache){
+        cacheTransposed = cache;
+        if (!cache) transposedChanged();
+    }
+
+
+    /**
+     * Forgets the cached transposes and float copies, so the next run makes them again from a and b.
+     */
+    public void transposedChanged(){
+        _a = null;
+        _b = null;
+        fa = null;
+        fb = null;
+    }
+
+
+    /**
+     * Sets the block sizes of the tiled algorithm (choice 3), see TiledGemm.
+     * @param mc number of rows of A packed at a time (L2)
+     * @param kc depth of the blocks (L1)
+     * @param nc number of columns of B packed at a time
+     */
+    public void setBlockSizes(int mc, int kc, int nc){
+        tiled = new TiledGemm(mc, kc, nc);
+    }
+
+
+    /**
+     * Sets the size below which Strassen-Winograd (choice 5) multiplies blocks with the tiled algorithm.
+     * @param crossover the size, see StrassenMultiply
+     */
+    public void setStrassenCrossover(int crossover){
+        strassen = new StrassenMultiply(crossover);
+    }
+
+
+    /**
+     * Estimates the bytes a run moves between the memory and the caches, for Profile:
+     * - 0, 1 and 2 (one element of C after another): A, or its transpose, is read once, but B, or its transpose,
+     *   is read once for every row of C, as it does not stay in the cache when it is large. The transposes read
+     *   and write their matrix once more.
+     * - 3, 4 and 5: the blocked traffic of the tiled algorithm (TiledGemm.bytesMoved), which the recursive and
+     *   Strassen-Winograd algorithms end in.
+     * - 6 and 7: the same for the float operands, and for 6 the copy of the float result to the doubles. Unless
+     *   they are cached (setCacheTransposed), rounding a and b to float reads their doubles and writes the floats.
+     * @param choice as for runWorker(int)
+     * @return the estimated bytes
+     */
+    public long bytesMoved(int choice){
+        long cBytes = 8L * m * n;
+        long toFloat = cacheTransposed ? 0 : 12L * ((long) m * depth + (long) depth * n);   // 8 bytes read, 4 written
+        switch (choice) {
+            case 0: return 8L * m * depth + 8L * m * depth * n + cBytes;
+            case 1: return 8L * m * depth * 3 + 8L * m * depth * n + cBytes;
+            case 2: return 8L * m * depth + 16L * depth * n + 8L * m * depth * n + cBytes;
+            case 6: return floatGemm.bytesMoved(m, depth, n, false) + 4L * m * n + cBytes + toFloat;
+            case 7: return floatGemm.bytesMoved(m, depth, n, true) + toFloat;
+            default: return tiled.bytesMoved(m, depth, n);
+        }
+    }
+
+
     /**
      * Creates and runs appropriate worker based on param choice.
-     * @param choice 1 for A transposed, and 2 for B transposed
-     * @return multiplication result, 2D matrix
+     * @param choice 1 for A transposed, 2 for B transposed, 3 for the cache-blocked (tiled) algorithm,
+     *               4 for the recursive (fork/join) algorithm, 5 for Strassen-Winograd, 6 for the tiled algorithm
+     *               in single precision and 7 for the tiled algorithm on float operands summing in double.
+     *               For 6 and 7, a and b are rounded to float on every run, like the transposes of 1 and 2, or
+     *               only on the first one with setCacheTransposed(true), like stored float operands.
+     * @return multiplication result, in a matrix owned by this Workers, which the next run overwrites
+     */
+    public Matrix runWorker(int choice){
+        if (c == null) c = new Matrix(m, n);
+        runWorker(choice, c, false);
+        return c;
+    }
+
+
+    /**
+     * Creates and runs appropriate worker based on param choice, writing the result straight into out: each
+     * thread writes its own rows (or tiles) of it, so nothing is allocated for the result nor copied afterwards.
+     * @param choice as for runWorker(int)
+     * @param out m x n matrix, receives the result. It must not share elements with a or b.
+     * @param accumulate true to add the product to out (out += a * b), false to overwrite out with it
      */
-    public double[][] runWorker(int choice){
+    public void runWorker(int choice, Matrix out, boolean accumulate){
+        TiledGemm.checkShapes(a, b, out);
         int s, e, id = 0, workerChoice = 0;   // 0 == classic algorithm, no transposing
+        if (choice == 3) {
+            if (accumulate) tiled.multiplyAdd(a, b, out);
+            else tiled.multiply(a, b, out);
+            return;
+        }
+        if (choice == 4) {
+            if (accumulate) RecursiveMultiply.multiplyAdd(a, b, out);
+            else RecursiveMultiply.multiply(a, b, out);
+            return;
+        }
+        if (choice == 5) {
+            if (accumulate) strassen.multiplyAdd(a, b, out);
+            else strassen.multiply(a, b, out);
+            return;
+        }
+        if (choice == 6 || choice == 7) {
+            if (fa == null || !cacheTransposed) fa = FloatMatrix.of(a);
+            if (fb == null || !cacheTransposed) fb = FloatMatrix.of(b);
+            if (choice == 7) {
+                if (accumulate) floatGemm.multiplyMixedAdd(fa, fb, out);
+                else floatGemm.multiplyMixed(fa, fb, out);
+                return;
+            }
+            if (fc == null) fc = new FloatMatrix(m, n);
+            floatGemm.multiply(fa, fb, fc);
+            fc.copyTo(out, accumulate);
+            return;
+        }
         if (choice == 1) {
-            _a = transpose(a);
+            if (_a == null || !cacheTransposed) _a = Transpose.transpose(a);
             workerChoice = 1;
         }
         else if (choice == 2) {
-            _b = transpose(b);
+            if (_b == null || !cacheTransposed) _b = Transpose.transpose(b);
             workerChoice = 2;
         }
 
+        MatrixMultiplier[] multipliers = new MatrixMultiplier[nrThreads];
         for (int i = 0; i < nrThreads - 1; i++){
             s = i * nrOfComponents;
             e = (i+1) * nrOfComponents;
-            new Thread(new MatrixMultiplier(s, e, ++id, workerChoice)).start();
+            multipliers[i] = new MatrixMultiplier(s, e, ++id, workerChoice, out, accumulate);
         }
         s = (nrThreads - 1) * nrOfComponents;
-        e = a.length;
-        new Thread(new MatrixMultiplier(s, e, ++id, workerChoice)).start();
+        e = m;
+        multipliers[nrThreads - 1] = new MatrixMultiplier(s, e, ++id, workerChoice, out, accumulate);
 
-        try { cb.await(); }
-        catch (Exception exception) { exception.printStackTrace(); }
-        return c;
+        WorkerPool.invokeAll(multipliers);
     }
-
-
-    /**
-     * rotate the A & B matrix, to _A and _B
-     * Flip rotate the matrix, where lower left corner is flipped with upper right.
-     * In other words, every value is swapped unless the values in (upper lef to lower right) diagonal.
-     * Assumes all rows have same length.
-     * @param matrix 2d array
-     * @return rotated matrix
-     */
-    private double[][] transpose(double[][] matrix){
-        int size = matrix.length;
-        double[][] rotatedMatrix = new double[size][size];
-
-        for (int i = 0; i < size; i++){
-            for (int j = 0; j < size; j++){
-                rotatedMatrix[i][j] = matrix[j][i];
-            }
-        }
-        return rotatedMatrix;
-    }
-
-}
\ No newline at end of file
+}
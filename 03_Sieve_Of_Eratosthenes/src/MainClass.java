@@ -59,6 +59,7 @@ public class MainClass {
      * @return array of timings.
      */
     private static long[] executeUserAction(int n, int k) {
+        WorkerPool.setParallelism(k);
         soe = new SieveOfEratosthenes(n);
         ps = new ParallelSieve(n, k);
         pf = new ParallelFactorization(n, k);
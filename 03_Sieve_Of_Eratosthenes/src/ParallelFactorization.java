@@ -1,13 +1,11 @@
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class ParallelFactorization {
     private int nrOfThreads;
     private int start, end;
     private final int[] primes;
-    private final CyclicBarrier cb;
     ReentrantLock reentrantLock = new ReentrantLock();
     ReentrantLock dealerLock = new ReentrantLock();
     private ArrayList<Long> factors;
@@ -16,11 +14,9 @@ public class ParallelFactorization {
         ParallelSieve soe = new ParallelSieve(n, k);
         this.primes = soe.work();
 
-        if (k < 1) nrOfThreads = Runtime.getRuntime().availableProcessors();
+        if (k < 1) nrOfThreads = WorkerPool.getParallelism();
         else nrOfThreads = k;
         if (primes.length < nrOfThreads) nrOfThreads = primes.length;
-
-        cb = new CyclicBarrier(nrOfThreads + 1);
     }
 
     private class Worker implements Runnable{
@@ -32,9 +28,6 @@ public class ParallelFactorization {
         public void run() {
             ArrayList<Long> localFactors = factorize();
             addToGlobalFactors(localFactors);
-
-            try {cb.await();}
-            catch (Exception exception) {exception.printStackTrace();}
         }
 
         private ArrayList<Long> factorize() {
@@ -98,12 +91,12 @@ public class ParallelFactorization {
         end = primes.length - 1;
         factors = new ArrayList<>();
 
+        Worker[] workers = new Worker[nrOfThreads];
         for (int i = 0; i < nrOfThreads; i++){
-            new Thread(new Worker(n)).start();
+            workers[i] = new Worker(n);
         }
 
-        try {cb.await();}
-        catch (Exception exception) {exception.printStackTrace();}
+        WorkerPool.invokeAll(workers);
 
         long p = getProducts(factors);
         long f = n / p;
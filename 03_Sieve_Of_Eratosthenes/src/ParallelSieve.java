@@ -1,5 +1,4 @@
 import java.util.ArrayList;
-import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collector;
 
@@ -17,7 +16,6 @@ public class ParallelSieve {
     private int[][] allPrimes;
     private int[] totalPrimes;
     private final ReentrantLock reentrantLock = new ReentrantLock();
-    private CyclicBarrier cb;
 
     private int startIndex;
     private int endIndex;
@@ -38,7 +36,7 @@ public class ParallelSieve {
         odds = new byte[n/16 + 1];
 
         // deciding nr of threads
-        if (k < 1) nrOfThreads = Runtime.getRuntime().availableProcessors();
+        if (k < 1) nrOfThreads = WorkerPool.getParallelism();
         else nrOfThreads = k;
         if (nrOfThreads > odds.length){
             bytesPerThread = 1;
@@ -56,8 +54,6 @@ public class ParallelSieve {
         int biggestPrime = primes[primes.length - 1];
         startIndex = getIndex(biggestPrime) + 1;
         endIndex = getIndex(n);
-
-        cb = new CyclicBarrier(nrOfThreads + 1);
     }
 
 
@@ -76,9 +72,6 @@ public class ParallelSieve {
         public void run() {
             sieve();
             collectPrimes();
-
-            try { cb.await(); }
-            catch (Exception exception){exception.printStackTrace();}
         }
 
 
@@ -207,18 +200,18 @@ public class ParallelSieve {
         init();
 
         int i;
+        Runnable[] tasks = new Runnable[nrOfThreads];
         for (i = 0; i < nrOfThreads - 1; i++){
             if (i == 0) s = startIndex;
             else s = (i * bytesPerThread * 8) - 1;
             e = ((i+1) * bytesPerThread * 8) - 1;
-            new Thread(new Worker(i+1, s, e)).start();
+            tasks[i] = new Worker(i+1, s, e);
         }
         s = ((nrOfThreads - 1) * bytesPerThread * 8) - 1;
         e = endIndex;
-        new Thread(new Worker(i+1, s, e)).start();
+        tasks[i] = new Worker(i+1, s, e);
 
-        try { cb.await();}
-        catch (Exception exception){exception.printStackTrace();}
+        WorkerPool.invokeAll(tasks);
 
 
         int len = 0;
@@ -230,13 +223,12 @@ public class ParallelSieve {
         totalPrimes = new int[len];
         len = 0;
         for (i = 0; i < nrOfThreads - 1; i++){
-            new Thread(new Collector(i, 1, len)).start();
+            tasks[i] = new Collector(i, 1, len);
             len += allPrimes[i].length;
         }
-        new Thread(new Collector(i, 2, len)).start();
+        tasks[i] = new Collector(i, 2, len);
 
-        try { cb.await(); }
-        catch (Exception exception){exception.printStackTrace();}
+        WorkerPool.invokeAll(tasks);
 
         return totalPrimes;
     }
@@ -266,9 +258,6 @@ public class ParallelSieve {
                     totalPrimes[start++] = allPrimes[row][j];
                 }
             }
-
-            try { cb.await(); }
-            catch (Exception exception){exception.printStackTrace();}
         }
     }
 
@@ -0,0 +1,74 @@
+import java.util.Map;
+
+/**
+ * Benchmarks of the sieve and the factorization, sequential and parallel, for every n and number of threads.
+ * The factorization benchmarks factorize the 100 largest numbers below n * n, like MainClass does.
+ *
+ * Run with: java -cp <classes> SieveBenchmark [options], see Bench for the options. Bench is shared by the projects and
+ * compiled together with each of them. Example:
+ *      javac -d out ../bench/src/*.java src/*.java
+ *      java -cp out SieveBenchmark -f 1 -p n=2000000000 -p threads=1,4,8 parallelSieve
+ */
+public class SieveBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String cores = "" + Runtime.getRuntime().availableProcessors();
+
+        Bench.run(SieveBenchmark.class, args, WorkerPool::setParallelism,
+                Bench.benchmark("sequentialSieve", SieveBenchmark::sequentialSieve)
+                        .param("n", "2000000", "20000000", "200000000"),
+
+                Bench.benchmark("parallelSieve", SieveBenchmark::parallelSieve)
+                        .param("n", "2000000", "20000000", "200000000")
+                        .param("threads", "1", cores),
+
+                Bench.benchmark("sequentialFactorization", SieveBenchmark::sequentialFactorization)
+                        .param("n", "2000000", "20000000", "200000000"),
+
+                Bench.benchmark("parallelFactorization", SieveBenchmark::parallelFactorization)
+                        .param("n", "2000000", "20000000", "200000000")
+                        .param("threads", "1", cores));
+    }
+
+
+    private static Bench.Invocation sequentialSieve(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        return () -> new SieveOfEratosthenes(n).getPrimes();
+    }
+
+
+    private static Bench.Invocation parallelSieve(Map<String, String> params) {
+        ParallelSieve sieve = new ParallelSieve(Integer.parseInt(params.get("n")), 0);
+        return sieve::work;
+    }
+
+
+    private static Bench.Invocation sequentialFactorization(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        int[] primes = new SieveOfEratosthenes(n).getPrimes();
+        long[] largests = MainClass.getLargest((long) n * n);
+
+        return () -> {
+            long product = 1;
+            for (long largest : largests) {
+                for (long factor : SieveOfEratosthenes.factor(primes, largest)) product *= factor;
+            }
+            return product;
+        };
+    }
+
+
+    private static Bench.Invocation parallelFactorization(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        ParallelFactorization factorization = new ParallelFactorization(n, 0);
+        long[] largests = MainClass.getLargest((long) n * n);
+
+        return () -> {
+            long product = 1;
+            for (long largest : largests) {
+                for (long factor : factorization.work(largest)) product *= factor;
+            }
+            return product;
+        };
+    }
+}
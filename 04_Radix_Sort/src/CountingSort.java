@@ -1,10 +1,7 @@
-import java.util.concurrent.CyclicBarrier;
-
 public class CountingSort {
     private int nrOfThreads, mask, shift, nrOfElementsPrThread;
     private int[] a, b;
     private int[][] pointers, frequencies;
-    private CyclicBarrier cb;
 
     public void countSort(int[] a, int[] b, int mask, int shift){
         init(a, b, mask, shift);
@@ -17,7 +14,7 @@ public class CountingSort {
         this.mask = mask; this.shift = shift;
 
 
-        nrOfThreads = Runtime.getRuntime().availableProcessors();
+        nrOfThreads = WorkerPool.getParallelism();
         if (nrOfThreads > a.length) nrOfThreads = a.length;
 
         /* optimization for nr of thread on my machine with 12 cores,
@@ -27,20 +24,18 @@ public class CountingSort {
         pointers = new int[nrOfThreads][mask + 1];
         frequencies = new int[nrOfThreads][mask + 1];
         nrOfElementsPrThread = a.length / nrOfThreads;
-
-        cb = new CyclicBarrier(nrOfThreads + 1);
     }
 
 
     private void count(){
         int i = 0;
+        Counter[] counters = new Counter[nrOfThreads];
         for (; i < nrOfThreads - 1; i++){
-            new Thread(new Counter(i, i * nrOfElementsPrThread, (i+1) * nrOfElementsPrThread)).start();
+            counters[i] = new Counter(i, i * nrOfElementsPrThread, (i+1) * nrOfElementsPrThread);
         }
-        new Thread(new Counter(i, (nrOfThreads-1) * nrOfElementsPrThread, a.length)).start();
+        counters[i] = new Counter(i, (nrOfThreads-1) * nrOfElementsPrThread, a.length);
 
-        try { cb.await(); }
-        catch (Exception exception) {exception.printStackTrace();}
+        WorkerPool.invokeAll(counters);
 
         for (i = 0; i < pointers[0].length; i++){
             if (i != 0) pointers[0][i] = pointers[pointers.length-1][i-1] + frequencies[frequencies.length-1][i-1];
@@ -54,13 +49,13 @@ public class CountingSort {
 
     private void transport(){
         int i;
+        Transporter[] transporters = new Transporter[nrOfThreads];
         for (i = 0; i < nrOfThreads - 1; i++){
-            new Thread(new Transporter(i, i * nrOfElementsPrThread, (i+1) * nrOfElementsPrThread)).start();
+            transporters[i] = new Transporter(i, i * nrOfElementsPrThread, (i+1) * nrOfElementsPrThread);
         }
-        new Thread(new Transporter(i,(nrOfThreads-1) * nrOfElementsPrThread, a.length)).start();
+        transporters[i] = new Transporter(i,(nrOfThreads-1) * nrOfElementsPrThread, a.length);
 
-        try { cb.await(); }
-        catch (Exception exception) {exception.printStackTrace();}
+        WorkerPool.invokeAll(transporters);
     }
 
 
@@ -77,9 +72,6 @@ public class CountingSort {
             for (int i = start; i < end; i++)
                 localDigitFrequencies[( a[i] >> shift) & mask]++;
             frequencies[id] = localDigitFrequencies;
-
-            try { cb.await(); }
-            catch (Exception exception) {exception.printStackTrace();}
         }
     }
 
@@ -99,9 +91,6 @@ public class CountingSort {
                 num = a[i];
                 b[localDigitPointers[(num >> shift) & mask]++] = num;
             }
-
-            try { cb.await(); }
-            catch (Exception exception) {exception.printStackTrace();}
         }
     }
 
@@ -1,14 +1,11 @@
-import java.util.concurrent.CyclicBarrier;
-
 public class FindMax {
     private int nrOfThreads;
     private final int nrOfElements;
     private final int[] a;
     private final int[] localMaxes;
-    private final CyclicBarrier cb;
     public FindMax(int[] a){
         this.a = a;
-        nrOfThreads = Runtime.getRuntime().availableProcessors();
+        nrOfThreads = WorkerPool.getParallelism();
 
         if (nrOfThreads > a.length) nrOfThreads = a.length;
         else if (a.length < 30000000) nrOfThreads = 1;
@@ -16,19 +13,18 @@ public class FindMax {
 
         nrOfElements = a.length / nrOfThreads;
         localMaxes = new int[nrOfThreads];
-        cb = new CyclicBarrier(nrOfThreads + 1);
     }
 
 
     public int findMax(){
         int i;
+        Finder[] finders = new Finder[nrOfThreads];
         for (i = 0; i < nrOfThreads - 1; i++){
-            new Thread(new Finder(i, i * nrOfElements, (i+1) * nrOfElements)).start();
+            finders[i] = new Finder(i, i * nrOfElements, (i+1) * nrOfElements);
         }
-        new Thread(new Finder(i, (nrOfThreads-1) * nrOfElements, a.length)).start();
+        finders[i] = new Finder(i, (nrOfThreads-1) * nrOfElements, a.length);
 
-        try { cb.await(); }
-        catch (Exception exception) {exception.printStackTrace();}
+        WorkerPool.invokeAll(finders);
 
         int max = localMaxes[0];
         for (i = 1; i < localMaxes.length; i++){
@@ -50,9 +46,6 @@ public class FindMax {
                 if (a[i] > max) max = a[i];
             }
             localMaxes[id] = max;
-
-            try { cb.await(); }
-            catch (Exception exception) {exception.printStackTrace();}
         }
     }
 }
@@ -0,0 +1,67 @@
+import java.util.Map;
+
+/**
+ * Benchmarks of the sequential and the parallel radix sort, for every n, number of bits per digit (useBits)
+ * and number of threads. Every invocation sorts a fresh copy of the same array.
+ *
+ * Run with: java -cp <classes> RadixSortBenchmark [options], see Bench for the options. Bench is shared by the projects and
+ * compiled together with each of them. Example:
+ *      javac -d out ../bench/src/*.java src/*.java
+ *      java -cp out RadixSortBenchmark -f 1 -p n=100000000 -p useBits=8,11 parallelRadixSort
+ */
+public class RadixSortBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String cores = "" + Runtime.getRuntime().availableProcessors();
+
+        Bench.run(RadixSortBenchmark.class, args, WorkerPool::setParallelism,
+                Bench.benchmark("sequentialRadixSort", RadixSortBenchmark::sequentialRadixSort)
+                        .param("n", "1000000", "10000000", "100000000")
+                        .param("useBits", "4", "8", "11"),
+
+                Bench.benchmark("parallelRadixSort", RadixSortBenchmark::parallelRadixSort)
+                        .param("n", "1000000", "10000000", "100000000")
+                        .param("useBits", "4", "8", "11")
+                        .param("threads", "1", cores));
+    }
+
+
+    private static Bench.Invocation sequentialRadixSort(Map<String, String> params) {
+        int[] original = Oblig4Precode.generateArray(Integer.parseInt(params.get("n")), 42);
+        int[] array = new int[original.length];
+        int useBits = Integer.parseInt(params.get("useBits"));
+
+        return new Bench.Invocation() {
+            @Override
+            public void setup() {
+                System.arraycopy(original, 0, array, 0, array.length);
+            }
+
+            @Override
+            public Object run() {
+                return new RadixSort(useBits).radixSort(array);
+            }
+        };
+    }
+
+
+    private static Bench.Invocation parallelRadixSort(Map<String, String> params) {
+        int[] original = Oblig4Precode.generateArray(Integer.parseInt(params.get("n")), 42);
+        int[] array = new int[original.length];
+        int useBits = Integer.parseInt(params.get("useBits"));
+
+        return new Bench.Invocation() {
+            @Override
+            public void setup() {
+                System.arraycopy(original, 0, array, 0, array.length);
+            }
+
+            @Override
+            public Object run() {
+                ParallelRadixSort sort = new ParallelRadixSort(useBits);
+                sort.radixSort(array);
+                return sort.a;
+            }
+        };
+    }
+}
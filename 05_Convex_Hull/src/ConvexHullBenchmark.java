@@ -0,0 +1,47 @@
+import java.util.Map;
+
+/**
+ * Benchmarks of the sequential and the parallel convex hull, for every n and number of threads.
+ * The points are made once per n, with the same seed as TheMain.
+ *
+ * Run with: java -cp <classes> ConvexHullBenchmark [options], see Bench for the options. Bench is shared by the projects and
+ * compiled together with each of them. Example:
+ *      javac -d out ../bench/src/*.java src/*.java
+ *      java -cp out ConvexHullBenchmark -f 1 -p n=10000000 -p threads=1,4,8 parallelConvexHull
+ */
+public class ConvexHullBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String cores = "" + Runtime.getRuntime().availableProcessors();
+
+        Bench.run(ConvexHullBenchmark.class, args, WorkerPool::setParallelism,
+                Bench.benchmark("sequentialConvexHull", ConvexHullBenchmark::sequentialConvexHull)
+                        .param("n", "100000", "1000000", "10000000"),
+
+                Bench.benchmark("parallelConvexHull", ConvexHullBenchmark::parallelConvexHull)
+                        .param("n", "100000", "1000000", "10000000")
+                        .param("threads", "1", cores));
+    }
+
+
+    private static Bench.Invocation sequentialConvexHull(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        int[] x = new int[n], y = new int[n];
+        NPunkter17 np = new NPunkter17(n, TheMain.seed);
+        np.fyllArrayer(x, y);
+        IntList points = np.lagIntList();
+
+        return () -> new ConvexHull(n, x, y, points).quickHull();
+    }
+
+
+    private static Bench.Invocation parallelConvexHull(Map<String, String> params) {
+        int n = Integer.parseInt(params.get("n"));
+        int[] x = new int[n], y = new int[n];
+        NPunkter17 np = new NPunkter17(n, TheMain.seed);
+        np.fyllArrayer(x, y);
+        IntList points = np.lagIntList();
+
+        return () -> new ParallelConvexHull(n, 0, x, y, points).work().quickHull();
+    }
+}
@@ -1,6 +1,5 @@
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.CyclicBarrier;
 
 public class ParallelConvexHull {
     private final int n;
@@ -10,7 +9,6 @@ public class ParallelConvexHull {
     private final int[] y;
     private IntList[] intLists;
     private final IntList points;
-    private final CyclicBarrier cb;
 
     /**
      * Constructor
@@ -28,12 +26,11 @@ public class ParallelConvexHull {
 
         // if given k is 0 then use the number of available processors or use customized k based on n
         if (k == 0)
-            nrOfThrds = Runtime.getRuntime().availableProcessors();
+            nrOfThrds = WorkerPool.getParallelism();
         else
             nrOfThrds = k;
 
         nrOfElmnts = n / nrOfThrds;
-        cb = new CyclicBarrier(nrOfThrds + 1);
     }
 
 
@@ -45,17 +42,13 @@ public class ParallelConvexHull {
         intLists = new IntList[nrOfThrds];
 
         int i;
+        Worker[] workers = new Worker[nrOfThrds];
         for (i = 0; i < nrOfThrds - 1; i++) {
-            new Thread(new Worker(i, i * nrOfElmnts, (i+1) * nrOfElmnts)).start();
+            workers[i] = new Worker(i, i * nrOfElmnts, (i+1) * nrOfElmnts);
         }
-        new Thread(new Worker(i, (nrOfThrds - 1) * nrOfElmnts, points.size())).start();
+        workers[i] = new Worker(i, (nrOfThrds - 1) * nrOfElmnts, points.size());
 
-        try {
-            cb.await();
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
+        WorkerPool.invokeAll(workers);
 
         int size = 0;
         for (IntList list : intLists){
@@ -96,13 +89,6 @@ public class ParallelConvexHull {
         @Override
         public void run() {
             intLists[id] = quickHull();
-
-            try {
-                cb.await();
-            }
-            catch (Exception e) {
-                e.printStackTrace();
-            }
         }
 
         IntList quickHull() {
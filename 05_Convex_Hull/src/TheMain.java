@@ -42,6 +42,7 @@ public class TheMain {
      * @param k number of threads
      */
     private static void runUserCommands(int n, int k) {
+        WorkerPool.setParallelism(k);
         int[] x = new int[n];
         int[] y = new int[n];
         NPunkter17 np = new NPunkter17(n, seed);
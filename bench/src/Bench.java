@@ -0,0 +1,360 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * A small benchmark harness in the style of JMH, for the *Benchmark classes of this project. JMH itself needs a
+ * build tool and annotation processing, and these projects are compiled with plain javac, so this harness
+ * gives us what we need from it without any dependencies. There is one copy of it, shared by all the projects
+ * and compiled together with each of them, e.g. javac -d out ../bench/src/*.java src/*.java
+ *
+ * - warmup iterations, which are run but not counted, so the JIT has compiled the code before we measure
+ * - measurement iterations, each running the benchmark over and over for a given time, timing only the call
+ *   itself and not its setup (e.g. copying an array that the call sorts in place)
+ * - forks: every parameter combination is measured in fresh JVMs, so one benchmark's JIT profile and garbage
+ *   don't leak into the next one
+ * - a blackhole (consume) for results, so the JIT can't remove the work as dead code. It is a store to a volatile
+ *   field, which the JIT must keep, once per operation: with operations of milliseconds its cost is not seen
+ * - the average time per operation with a 99.9 % confidence interval, as a table and as JMH style JSON
+ *
+ * Options (the same names as JMH's):
+ *      -wi <n>     warmup iterations, default 3
+ *      -i <n>      measurement iterations, default 5
+ *      -r <ms>     time of each iteration in milliseconds, default 1000
+ *      -f <n>      forks, default 2. With 0, everything runs in this JVM.
+ *      -p <name>=<v1>,<v2>,...     replaces the values of a parameter
+ *      -rff <file> JSON result file, default bench-result.json
+ *      <regex>     only run the benchmarks whose name matches
+ *
+ * A parameter called "threads" is handed to the project's setter of the number of threads (its
+ * WorkerPool.setParallelism) before the benchmark is set up.
+ */
+public final class Bench {
+    private static final String CHILD = "-child";
+    private static volatile Object sink;
+
+    private Bench() {}
+
+
+    /**
+     * Sets up the state of a benchmark for one combination of parameter values.
+     */
+    public interface Factory {
+        Invocation create(Map<String, String> params) throws Exception;
+    }
+
+
+    /**
+     * One operation of a benchmark. setup() is called before every run(), but is not timed.
+     */
+    public interface Invocation {
+        default void setup() throws Exception {}
+
+        Object run() throws Exception;
+    }
+
+
+    public static final class Definition {
+        final String name;
+        final Factory factory;
+        final LinkedHashMap<String, String[]> params = new LinkedHashMap<>();
+
+        private Definition(String name, Factory factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        public Definition param(String name, String... values) {
+            params.put(name, values);
+            return this;
+        }
+    }
+
+
+    public static Definition benchmark(String name, Factory factory) {
+        return new Definition(name, factory);
+    }
+
+
+    /**
+     * Hides a result from the JIT, so the code computing it is not removed as dead.
+     */
+    public static void consume(Object result) {
+        sink = result;
+    }
+
+
+    /**
+     * Runs the benchmarks, given the command line arguments of the benchmark class.
+     * @param mainClass the benchmark class, whose main method is started again in the forks
+     * @param args the command line arguments
+     * @param threads sets the number of threads, given the "threads" parameter
+     * @param benchmarks the benchmarks
+     */
+    public static void run(Class<?> mainClass, String[] args, IntConsumer threads, Definition... benchmarks) throws Exception {
+        Options options = new Options(args);
+        for (Definition benchmark : benchmarks) {
+            for (Map.Entry<String, String[]> override : options.params.entrySet()) {
+                if (benchmark.params.containsKey(override.getKey())) benchmark.params.put(override.getKey(), override.getValue());
+            }
+        }
+
+        if (options.child != null) {            // we are a fork: measure one combination and report the raw data
+            Definition benchmark = find(benchmarks, options.child);
+            double[] scores = measure(benchmark, parseParams(options.childParams), options, threads);
+            System.out.println(CHILD + " " + join(scores));
+            return;
+        }
+
+        List<String> results = new ArrayList<>();
+        for (Definition benchmark : benchmarks) {
+            if (options.filter != null && !benchmark.name.matches(".*" + options.filter + ".*")) continue;
+
+            for (Map<String, String> params : combinations(benchmark.params)) {
+                List<double[]> forks = new ArrayList<>();
+                if (options.forks == 0) forks.add(measure(benchmark, params, options, threads));
+                for (int f = 0; f < options.forks; f++) forks.add(fork(mainClass, benchmark, params, options));
+
+                Score score = new Score(forks);
+                System.out.printf("%-30s %-50s %12.4f +- %10.4f ms/op%n", benchmark.name, params, score.mean, score.error);
+                results.add(toJson(benchmark, params, options, score));
+            }
+        }
+
+        Path path = Paths.get(options.resultFile);
+        Files.write(path, ("[\n" + String.join(",\n", results) + "\n]\n").getBytes());
+        System.out.println("Results written to " + path.toAbsolutePath());
+    }
+
+
+    /**
+     * Runs the warmup and measurement iterations in this JVM.
+     * @return the average milliseconds per operation in each measurement iteration
+     */
+    private static double[] measure(Definition benchmark, Map<String, String> params, Options options, IntConsumer threads)
+            throws Exception {
+        if (params.containsKey("threads")) threads.accept(Integer.parseInt(params.get("threads")));
+        Invocation invocation = benchmark.factory.create(params);
+
+        for (int i = 0; i < options.warmupIterations; i++) iteration(invocation, options.iterationMillis);
+
+        double[] scores = new double[options.iterations];
+        for (int i = 0; i < scores.length; i++) scores[i] = iteration(invocation, options.iterationMillis);
+        return scores;
+    }
+
+
+    /**
+     * @return the average milliseconds per operation, over as many operations as fit in the iteration time (at least one).
+     */
+    private static double iteration(Invocation invocation, long millis) throws Exception {
+        long measured = 0, operations = 0, start;
+        long deadline = System.nanoTime() + millis * 1000000;
+        do {
+            invocation.setup();
+            start = System.nanoTime();
+            consume(invocation.run());
+            measured += System.nanoTime() - start;
+            operations++;
+        } while (System.nanoTime() < deadline);
+        return measured / 1000000.0 / operations;
+    }
+
+
+    /**
+     * Measures one parameter combination in a new JVM, started with the same JVM arguments and class path as this one.
+     */
+    private static double[] fork(Class<?> mainClass, Definition benchmark, Map<String, String> params, Options options)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), mainClass.getName(),
+                "-wi", "" + options.warmupIterations, "-i", "" + options.iterations, "-r", "" + options.iterationMillis,
+                CHILD, benchmark.name, formatParams(params)));
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        double[] scores = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(CHILD + " ")) scores = parseDoubles(line.substring(CHILD.length() + 1));
+                else System.out.println(line);
+            }
+        }
+        if (process.waitFor() != 0 || scores == null)
+            throw new IllegalStateException("Fork of " + benchmark.name + " " + params + " failed");
+        return scores;
+    }
+
+
+    private static final class Score {
+        final double mean, error;
+        final List<double[]> forks;
+
+        Score(List<double[]> forks) {
+            this.forks = forks;
+            double sum = 0;
+            int n = 0;
+            for (double[] fork : forks) for (double score : fork) { sum += score; n++; }
+            mean = sum / n;
+
+            double squares = 0;
+            for (double[] fork : forks) for (double score : fork) squares += (score - mean) * (score - mean);
+            error = (n < 2) ? Double.NaN : studentT999(n - 1) * Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+        }
+
+        /**
+         * @return the two sided 99.9 % quantile of Student's t-distribution
+         */
+        private static double studentT999(int degreesOfFreedom) {
+            double[] table = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+                    4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+                    3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+            if (degreesOfFreedom <= table.length) return table[degreesOfFreedom - 1];
+            if (degreesOfFreedom <= 60) return 3.460;
+            if (degreesOfFreedom <= 120) return 3.373;
+            return 3.291;
+        }
+    }
+
+
+    private static String toJson(Definition benchmark, Map<String, String> params, Options options, Score score) {
+        StringBuilder json = new StringBuilder();
+        json.append("  {\n");
+        json.append("    \"benchmark\" : \"").append(benchmark.name).append("\",\n");
+        json.append("    \"mode\" : \"avgt\",\n");
+        json.append("    \"forks\" : ").append(options.forks).append(",\n");
+        json.append("    \"warmupIterations\" : ").append(options.warmupIterations).append(",\n");
+        json.append("    \"measurementIterations\" : ").append(options.iterations).append(",\n");
+        json.append("    \"measurementTime\" : \"").append(options.iterationMillis).append(" ms\",\n");
+        json.append("    \"params\" : {");
+        int i = 0;
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            json.append(i++ == 0 ? " " : ", ").append('"').append(param.getKey()).append("\" : \"").append(param.getValue()).append('"');
+        }
+        json.append(" },\n");
+        json.append("    \"primaryMetric\" : {\n");
+        json.append("      \"score\" : ").append(number(score.mean)).append(",\n");
+        json.append("      \"scoreError\" : ").append(number(score.error)).append(",\n");
+        json.append("      \"scoreConfidence\" : [ ").append(number(score.mean - score.error)).append(", ")
+                .append(number(score.mean + score.error)).append(" ],\n");
+        json.append("      \"scoreUnit\" : \"ms/op\",\n");
+        json.append("      \"rawData\" : [ ");
+        for (int f = 0; f < score.forks.size(); f++) {
+            if (f > 0) json.append(", ");
+            json.append("[ ").append(join(score.forks.get(f)).replace(",", ", ")).append(" ]");
+        }
+        json.append(" ]\n    }\n  }");
+        return json.toString();
+    }
+
+
+    private static String number(double d) {
+        return Double.isNaN(d) ? "\"NaN\"" : Double.toString(d);
+    }
+
+
+    private static List<Map<String, String>> combinations(LinkedHashMap<String, String[]> params) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (Map.Entry<String, String[]> param : params.entrySet()) {
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> combination : combinations) {
+                for (String value : param.getValue()) {
+                    Map<String, String> extended = new LinkedHashMap<>(combination);
+                    extended.put(param.getKey(), value);
+                    next.add(extended);
+                }
+            }
+            combinations = next;
+        }
+        return combinations;
+    }
+
+
+    private static Definition find(Definition[] benchmarks, String name) {
+        for (Definition benchmark : benchmarks) {
+            if (benchmark.name.equals(name)) return benchmark;
+        }
+        throw new IllegalArgumentException("No benchmark called " + name);
+    }
+
+
+    private static String formatParams(Map<String, String> params) {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (s.length() > 0) s.append(';');
+            s.append(param.getKey()).append('=').append(param.getValue());
+        }
+        return s.toString();
+    }
+
+
+    private static Map<String, String> parseParams(String s) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (s.isEmpty()) return params;
+        for (String param : s.split(";")) {
+            int eq = param.indexOf('=');
+            params.put(param.substring(0, eq), param.substring(eq + 1));
+        }
+        return params;
+    }
+
+
+    private static String join(double[] values) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) s.append(',');
+            s.append(values[i]);
+        }
+        return s.toString();
+    }
+
+
+    private static double[] parseDoubles(String s) {
+        String[] parts = s.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Double.parseDouble(parts[i]);
+        return values;
+    }
+
+
+    private static final class Options {
+        int warmupIterations = 3, iterations = 5, forks = 2;
+        long iterationMillis = 1000;
+        String resultFile = "bench-result.json";
+        String filter, child, childParams;
+        final Map<String, String[]> params = new LinkedHashMap<>();
+
+        Options(String[] args) {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-wi": warmupIterations = Integer.parseInt(args[++i]); break;
+                    case "-i": iterations = Integer.parseInt(args[++i]); break;
+                    case "-r": iterationMillis = Long.parseLong(args[++i]); break;
+                    case "-f": forks = Integer.parseInt(args[++i]); break;
+                    case "-rff": resultFile = args[++i]; break;
+                    case "-p": {
+                        String param = args[++i];
+                        int eq = param.indexOf('=');
+                        params.put(param.substring(0, eq), param.substring(eq + 1).split(","));
+                        break;
+                    }
+                    case CHILD: child = args[++i]; childParams = args[++i]; break;
+                    default: filter = args[i]; break;
+                }
+            }
+        }
+    }
+}